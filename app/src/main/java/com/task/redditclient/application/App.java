@@ -1,8 +1,14 @@
 package com.task.redditclient.application;
 
 import android.app.Application;
+import android.os.Looper;
+import android.os.MessageQueue;
 
+import com.task.redditclient.net.DiskCache;
 import com.task.redditclient.net.Engine;
+import com.task.redditclient.net.NetManager;
+
+import java.io.File;
 
 /**
  * The Application class to maintain global application state.
@@ -11,10 +17,15 @@ public class App extends Application {
     /** Application to access application resources (except graphical) everywhere. */
     private static App sSelf;
 
-    /** Shared data storage */
+    /** Name of HTTP cache directory */
+    private static final String HTTP_CACHE_DIR = "http";
+    /** Name of directory of partial downloads */
+    private static final String DOWNLOAD_DIR = "downloads";
+
+    /** Shared data storage, created on the first access */
     private Storage mStorage;
 
-    /** Network engine. */
+    /** Network engine, created on the first access */
     private Engine mEngine;
 
     /**
@@ -22,11 +33,24 @@ public class App extends Application {
      */
     @Override
     public void onCreate() {
+        StartupTrace.start();
+        StartupTrace.beginSection(StartupTrace.APP_CREATE);
         super.onCreate();
         sSelf = this;
 
-        mStorage = new Storage();
-        mEngine = new Engine();
+        // Cache index is read lazily on the first access in a background thread.
+        NetManager.setCache(new DiskCache(new File(getCacheDir(), HTTP_CACHE_DIR), Common.HTTP_CACHE_SIZE));
+        NetManager.setDownloadDir(new File(getCacheDir(), DOWNLOAD_DIR));
+
+        // Job scheduling is not needed for the first screen, it is done when the main thread is idle.
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                FeedPrefetchService.schedule(App.this);
+                return false;
+            }
+        });
+        StartupTrace.endSection();
     }
 
     /**
@@ -42,14 +66,22 @@ public class App extends Application {
      * @return shared data storage
      */
     public static Storage getStorage() {
-        return sSelf.mStorage;
+        synchronized (sSelf) {
+            if (null == sSelf.mStorage) {
+                sSelf.mStorage = new Storage(new EntryRepository(sSelf));
+            }
+            return sSelf.mStorage;
+        }
     }
 
     /**
-     * Gets network engine
+     * Gets network engine. Should be called in the main thread.
      * @return network engine
      */
     public static Engine getEngine() {
+        if (null == sSelf.mEngine) {
+            sSelf.mEngine = new Engine();
+        }
         return sSelf.mEngine;
     }
 }
@@ -4,10 +4,32 @@ package com.task.redditclient.application;
  * Common application parameters.
  */
 public class Common {
-    /** Number of entries per a page */
-    public static final int ENTRY_NUM = 10;
-    /** Max number of entries */
-    public static final int MAX_ENTRIES = 50;
+    /** Number of entries in the first page, it is small to be displayed fast */
+    public static final int FIRST_PAGE_SIZE = 10;
+    /** Number of entries per a page until network is measured */
+    public static final int DEFAULT_PAGE_SIZE = 25;
+    /** Min number of entries per a page */
+    public static final int MIN_PAGE_SIZE = 10;
+    /** Max number of entries per a page, limited by Reddit API */
+    public static final int MAX_PAGE_SIZE = 100;
+    /** Number of entries before and after the visible ones which are kept in memory, others are read from the repository on access */
+    public static final int ENTRY_WINDOW = 200;
+    /** Number of rows before and after the visible ones whose display models are built in advance, more than thumbnail preload count */
+    public static final int ROW_WINDOW = 30;
+    /** Min distance in entries from the last visible entry to the end of list when the next page is requested */
+    public static final int PREFETCH_DISTANCE = 5;
+    /** Max prefetch distance in entries for fast scrolling */
+    public static final int MAX_PREFETCH_DISTANCE = 50;
+    /** Time in milliseconds which next page is requested in advance for, at current scroll velocity */
+    public static final int PREFETCH_TIME = 1500;
+    /** Number of rows beyond the visible ones whose thumbnails are loaded in advance */
+    public static final int THUMBNAIL_PRELOAD_COUNT = 10;
     /** Time parameter value. Value is one of (hour, day, week, month, year, all) */
     public static final String VALUE_TIME = "day";
+    /** Max size of HTTP response disk cache in bytes */
+    public static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024;
+    /** Identifier of background feed prefetch job */
+    public static final int PREFETCH_JOB_ID = 1;
+    /** Interval of background feed prefetch in milliseconds, prefetched page is displayed for a day */
+    public static final long PREFETCH_INTERVAL = 3 * 60 * 60 * 1000;
 }
@@ -0,0 +1,417 @@
+package com.task.redditclient.application;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import com.task.redditclient.model.json.Entry;
+import com.task.redditclient.model.json.EntryData;
+import com.task.redditclient.net.FeedSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Persistent repository of feed entries, so received entries survive process death.
+ * Entries are stored by listing, generation and position, each page is written in a single transaction.
+ * Replaced entries are written with a new generation instead of overwriting the old ones,
+ * so entries of the old generation can still be read until they are removed explicitly.
+ * Entries are read by position ranges, so the feed is never loaded into memory at once.
+ * Methods access the database and should be called in background threads.
+ */
+class EntryRepository extends SQLiteOpenHelper {
+    /** Database file name. */
+    private static final String DATABASE_NAME = "entries.db";
+    /** Database schema version. */
+    private static final int DATABASE_VERSION = 2;
+
+    //! Table of entries. Entry may be repeated in a listing when it moves between pages, so it is keyed by position.
+    private static final String TABLE_ENTRIES       = "entries";
+    private static final String COLUMN_LISTING      = "listing";
+    private static final String COLUMN_TIME_WINDOW  = "time_window";
+    private static final String COLUMN_GENERATION   = "generation";
+    private static final String COLUMN_POSITION     = "position";
+    private static final String COLUMN_NAME         = "name";
+    private static final String COLUMN_TITLE        = "title";
+    private static final String COLUMN_AUTHOR       = "author";
+    private static final String COLUMN_THUMBNAIL    = "thumbnail";
+    private static final String COLUMN_CREATED_UTC  = "created_utc";
+    private static final String COLUMN_NUM_COMMENTS = "num_comments";
+
+    //! Table of listings with their paging state.
+    private static final String TABLE_LISTINGS      = "listings";
+    private static final String COLUMN_SIZE         = "size";
+    private static final String COLUMN_AFTER        = "after";
+    private static final String COLUMN_UPDATE_TIME  = "update_time";
+
+    /** Time window value of listings without time period, primary key columns can't be null. */
+    private static final String NO_TIME_WINDOW = "";
+
+    /** Listings which are not updated for this time are removed, in milliseconds. */
+    private static final long MAX_LISTING_AGE = 7 * 24 * 60 * 60 * 1000L;
+
+    /** Condition to select entries of a listing. */
+    private static final String WHERE_LISTING = COLUMN_LISTING + " = ? AND " + COLUMN_TIME_WINDOW + " = ?";
+    /** Condition to select range of listing entries of a generation. */
+    private static final String WHERE_RANGE = WHERE_LISTING + " AND " + COLUMN_GENERATION + " = ? AND "
+            + COLUMN_POSITION + " >= ? AND " + COLUMN_POSITION + " < ?";
+
+    /** Statement to insert entry. */
+    private static final String INSERT_ENTRY = "INSERT OR REPLACE INTO " + TABLE_ENTRIES + " ("
+            + COLUMN_LISTING + ", " + COLUMN_TIME_WINDOW + ", " + COLUMN_GENERATION + ", " + COLUMN_POSITION + ", "
+            + COLUMN_NAME + ", " + COLUMN_TITLE + ", " + COLUMN_AUTHOR + ", " + COLUMN_THUMBNAIL + ", "
+            + COLUMN_CREATED_UTC + ", " + COLUMN_NUM_COMMENTS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /** Columns of read entries. */
+    private static final String[] ENTRY_COLUMNS = {
+            COLUMN_POSITION, COLUMN_NAME, COLUMN_TITLE, COLUMN_AUTHOR, COLUMN_THUMBNAIL, COLUMN_CREATED_UTC, COLUMN_NUM_COMMENTS
+    };
+
+    /** The last generation, 0 until it is read from the database. Guarded by this. */
+    private long mLastGeneration = 0;
+    /** The first generation of this process, entries of previous generations are written by previous processes. Guarded by this. */
+    private long mFirstGeneration = 0;
+    /** Listings which entries left by previous processes are removed. Guarded by this. */
+    private final HashSet<FeedSource> mCleanListings = new HashSet<>();
+
+    /**
+     * Stored state of a listing.
+     */
+    static class Listing {
+        /** Number of stored entries. */
+        final int size;
+        /** The next entry ID to continue paging, null if there are no more entries. */
+        final String after;
+        /** Time when the listing was updated, in milliseconds. */
+        final long updateTime;
+        /** Generations of listing chunks of {@link EntryStore#CHUNK_SIZE} entries. */
+        final long[] generations;
+        /** Full names of entries by position, missing ones are null. */
+        final String[] names;
+
+        /**
+         * Constructor.
+         * @param size Number of stored entries.
+         * @param after The next entry ID.
+         * @param updateTime Time when the listing was updated.
+         * @param generations Generations of listing chunks.
+         * @param names Full names of entries by position.
+         */
+        Listing(int size, String after, long updateTime, long[] generations, String[] names) {
+            this.size = size;
+            this.after = after;
+            this.updateTime = updateTime;
+            this.generations = generations;
+            this.names = names;
+        }
+    }
+
+    /**
+     * Constructor. Database is opened on the first access.
+     * @param context Context to access database.
+     */
+    EntryRepository(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Entries are read while a page is written.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * @see SQLiteOpenHelper#onCreate(SQLiteDatabase)
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ENTRIES + " ("
+                + COLUMN_LISTING + " TEXT NOT NULL, "
+                + COLUMN_TIME_WINDOW + " TEXT NOT NULL, "
+                + COLUMN_GENERATION + " INTEGER NOT NULL, "
+                + COLUMN_POSITION + " INTEGER NOT NULL, "
+                + COLUMN_NAME + " TEXT, "
+                + COLUMN_TITLE + " TEXT, "
+                + COLUMN_AUTHOR + " TEXT, "
+                + COLUMN_THUMBNAIL + " TEXT, "
+                + COLUMN_CREATED_UTC + " INTEGER NOT NULL, "
+                + COLUMN_NUM_COMMENTS + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_LISTING + ", " + COLUMN_TIME_WINDOW + ", "
+                + COLUMN_GENERATION + ", " + COLUMN_POSITION + "))");
+        db.execSQL("CREATE INDEX " + TABLE_ENTRIES + "_" + COLUMN_NAME
+                + " ON " + TABLE_ENTRIES + " (" + COLUMN_NAME + ")");
+        db.execSQL("CREATE TABLE " + TABLE_LISTINGS + " ("
+                + COLUMN_LISTING + " TEXT NOT NULL, "
+                + COLUMN_TIME_WINDOW + " TEXT NOT NULL, "
+                + COLUMN_SIZE + " INTEGER NOT NULL, "
+                + COLUMN_AFTER + " TEXT, "
+                + COLUMN_UPDATE_TIME + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_LISTING + ", " + COLUMN_TIME_WINDOW + "))");
+    }
+
+    /**
+     * @see SQLiteOpenHelper#onUpgrade(SQLiteDatabase, int, int)
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Entries are a cache of the network data, they are fetched again.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ENTRIES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_LISTINGS);
+        onCreate(db);
+    }
+
+    /**
+     * Creates generation to write entries which replace other ones.
+     * @return generation greater than all written ones.
+     */
+    synchronized long newGeneration() {
+        if (0 == mLastGeneration) {
+            SQLiteStatement statement = getReadableDatabase().compileStatement(
+                    "SELECT IFNULL(MAX(" + COLUMN_GENERATION + "), 0) FROM " + TABLE_ENTRIES);
+            try {
+                mLastGeneration = statement.simpleQueryForLong();
+            } finally {
+                statement.close();
+            }
+            mFirstGeneration = mLastGeneration + 1;
+        }
+        return ++mLastGeneration;
+    }
+
+    /**
+     * Writes entries of listing starting from the given position in a single transaction.
+     * Entries of other generations are kept. When the first page of listing is written by this process,
+     * its entries left by previous processes are removed, unless the listing is restored by {@link #restoreListing(FeedSource)}.
+     * Listings which are not updated for a long time are removed when the first page is written.
+     * @param source Listing.
+     * @param generation Generation of written entries.
+     * @param start Position of the first written entry.
+     * @param entries Entries to write.
+     * @param after The next entry ID to continue paging.
+     */
+    void putEntries(FeedSource source, long generation, int start, List<Entry> entries, String after) {
+        String[] listing = listingArgs(source);
+        long now = System.currentTimeMillis();
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (0 == start) {
+                removeListings(db, now - MAX_LISTING_AGE);
+                synchronized (this) {
+                    if (mCleanListings.add(source)) {
+                        db.delete(TABLE_ENTRIES, WHERE_LISTING + " AND " + COLUMN_GENERATION + " < ?",
+                                new String[]{listing[0], listing[1], String.valueOf(mFirstGeneration)});
+                    }
+                }
+            }
+
+            SQLiteStatement insert = db.compileStatement(INSERT_ENTRY);
+            try {
+                int position = start;
+                for (Entry entry : entries) {
+                    EntryData data = (null == entry.data ? new EntryData() : entry.data);
+                    insert.clearBindings();
+                    insert.bindString(1, listing[0]);
+                    insert.bindString(2, listing[1]);
+                    insert.bindLong(3, generation);
+                    insert.bindLong(4, position++);
+                    bindNullable(insert, 5, data.name);
+                    bindNullable(insert, 6, data.title);
+                    bindNullable(insert, 7, data.author);
+                    bindNullable(insert, 8, data.thumbnail);
+                    insert.bindLong(9, data.created_utc);
+                    insert.bindLong(10, data.num_comments);
+                    insert.executeInsert();
+                }
+            } finally {
+                insert.close();
+            }
+
+            db.execSQL("INSERT OR REPLACE INTO " + TABLE_LISTINGS + " (" + COLUMN_LISTING + ", " + COLUMN_TIME_WINDOW
+                    + ", " + COLUMN_SIZE + ", " + COLUMN_AFTER + ", " + COLUMN_UPDATE_TIME + ") VALUES (?, ?, ?, ?, ?)",
+                    new Object[]{listing[0], listing[1], start + entries.size(), after, now});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Removes chunks of entries which are not used anymore, in a single transaction.
+     * @param chunks Removed chunks.
+     */
+    void removeChunks(List<EntryStore.ChunkReference> chunks) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (EntryStore.ChunkReference chunk : chunks) {
+                String[] listing = listingArgs(chunk.source);
+                db.delete(TABLE_ENTRIES, WHERE_RANGE, new String[]{listing[0], listing[1], String.valueOf(chunk.generation),
+                        String.valueOf(chunk.start), String.valueOf(chunk.start + EntryStore.CHUNK_SIZE)});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Gets stored state of listing written by the previous process.
+     * Entries which are not part of the listing anymore, e.g. replaced ones, are removed.
+     * Only names of the listing entries are read, other columns are read by chunks when they are accessed.
+     * @param source Listing.
+     * @return listing state or null if listing is not stored.
+     */
+    Listing restoreListing(FeedSource source) {
+        String[] listing = listingArgs(source);
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(TABLE_LISTINGS, new String[]{COLUMN_SIZE, COLUMN_AFTER, COLUMN_UPDATE_TIME},
+                    WHERE_LISTING, listing, null, null, null, null);
+            int size;
+            String after;
+            long updateTime;
+            try {
+                if (!cursor.moveToNext()) {
+                    return null;
+                }
+                size = cursor.getInt(0);
+                after = getNullableString(cursor, 1);
+                updateTime = cursor.getLong(2);
+            } finally {
+                cursor.close();
+            }
+
+            // Chunk is written by a single generation, the following generations replace the whole chunk.
+            long[] generations = new long[(size + EntryStore.CHUNK_SIZE - 1) / EntryStore.CHUNK_SIZE];
+            cursor = db.rawQuery("SELECT " + COLUMN_POSITION + " / " + EntryStore.CHUNK_SIZE + ", MAX(" + COLUMN_GENERATION
+                    + ") FROM " + TABLE_ENTRIES + " WHERE " + WHERE_LISTING + " AND " + COLUMN_POSITION + " < ? GROUP BY 1",
+                    new String[]{listing[0], listing[1], String.valueOf(size)});
+            try {
+                while (cursor.moveToNext()) {
+                    generations[cursor.getInt(0)] = cursor.getLong(1);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            db.delete(TABLE_ENTRIES, WHERE_LISTING + " AND " + COLUMN_POSITION + " >= ?",
+                    new String[]{listing[0], listing[1], String.valueOf(size)});
+            for (int i = 0; i < generations.length; ++i) {
+                if (0 == generations[i]) {
+                    // Entries of the listing are missing.
+                    return null;
+                }
+                db.delete(TABLE_ENTRIES, WHERE_LISTING + " AND " + COLUMN_GENERATION + " <> ? AND "
+                        + COLUMN_POSITION + " >= ? AND " + COLUMN_POSITION + " < ?",
+                        new String[]{listing[0], listing[1], String.valueOf(generations[i]),
+                                String.valueOf(i * EntryStore.CHUNK_SIZE), String.valueOf((i + 1) * EntryStore.CHUNK_SIZE)});
+            }
+
+            // Only one generation of each chunk is left.
+            String[] names = new String[size];
+            cursor = db.query(TABLE_ENTRIES, new String[]{COLUMN_POSITION, COLUMN_NAME}, WHERE_LISTING,
+                    listing, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    names[cursor.getInt(0)] = getNullableString(cursor, 1);
+                }
+            } finally {
+                cursor.close();
+            }
+            db.setTransactionSuccessful();
+            synchronized (this) {
+                mCleanListings.add(source);
+            }
+            return new Listing(size, after, updateTime, generations, names);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Reads range of listing entries of a generation. The range is looked up by the primary key index.
+     * @param source Listing.
+     * @param generation Generation of entries.
+     * @param start Position of the first entry to read.
+     * @param count Max number of entries to read.
+     * @return entries by position from start, missing ones are null.
+     */
+    EntryData[] getEntries(FeedSource source, long generation, int start, int count) {
+        String[] listing = listingArgs(source);
+        EntryData[] entries = new EntryData[count];
+        Cursor cursor = getReadableDatabase().query(TABLE_ENTRIES, ENTRY_COLUMNS, WHERE_RANGE,
+                new String[]{listing[0], listing[1], String.valueOf(generation), String.valueOf(start), String.valueOf(start + count)},
+                null, null, COLUMN_POSITION, null);
+        try {
+            while (cursor.moveToNext()) {
+                EntryData data = new EntryData();
+                data.name = getNullableString(cursor, 1);
+                data.title = getNullableString(cursor, 2);
+                data.author = getNullableString(cursor, 3);
+                data.thumbnail = getNullableString(cursor, 4);
+                data.created_utc = cursor.getLong(5);
+                data.num_comments = cursor.getInt(6);
+                entries[cursor.getInt(0) - start] = data;
+            }
+        } finally {
+            cursor.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Removes listings which are not updated since the given time, with their entries.
+     * @param db Database to update.
+     * @param time Time in milliseconds.
+     */
+    private static void removeListings(SQLiteDatabase db, long time) {
+        ArrayList<String[]> listings = new ArrayList<>();
+        Cursor cursor = db.query(TABLE_LISTINGS, new String[]{COLUMN_LISTING, COLUMN_TIME_WINDOW},
+                COLUMN_UPDATE_TIME + " < ?", new String[]{String.valueOf(time)}, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                listings.add(new String[]{cursor.getString(0), cursor.getString(1)});
+            }
+        } finally {
+            cursor.close();
+        }
+        for (String[] listing : listings) {
+            db.delete(TABLE_ENTRIES, WHERE_LISTING, listing);
+            db.delete(TABLE_LISTINGS, WHERE_LISTING, listing);
+        }
+    }
+
+    /**
+     * Builds arguments of condition to select listing.
+     * @param source Listing.
+     * @return listing path and time window.
+     */
+    private static String[] listingArgs(FeedSource source) {
+        return new String[]{source.path, (null == source.time ? NO_TIME_WINDOW : source.time)};
+    }
+
+    /**
+     * Binds string which may be null.
+     * @param statement Statement to bind value to.
+     * @param index Parameter index, starting from 1.
+     * @param value Value to bind.
+     */
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (null == value) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Gets string column value which may be null.
+     * @param cursor Cursor positioned at the row.
+     * @param index Column index.
+     * @return column value.
+     */
+    private static String getNullableString(Cursor cursor, int index) {
+        return (cursor.isNull(index) ? null : cursor.getString(index));
+    }
+}
@@ -0,0 +1,648 @@
+package com.task.redditclient.application;
+
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import com.task.redditclient.model.json.Entry;
+import com.task.redditclient.model.json.EntryData;
+import com.task.redditclient.net.FeedSource;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Compact append-only storage of entries.
+ * Entry fields are kept in parallel arrays allocated by fixed size chunks,
+ * so there are no per-entry wrapper objects. Repeated author names and
+ * thumbnail hosts are deduplicated to share the same string instances.
+ * Entries are added under external synchronization, snapshots returned by
+ * {@link #snapshot()} can be read from any thread without external locking.
+ * Full chunks are never written again, so once their entries are written to the repository
+ * they can be evicted and are loaded back by a range query transparently when they are accessed.
+ * Stable IDs of entries are kept for all positions and are never evicted, so reading them does not wait for disk.
+ * Each chunk is written with the generation of the storage which created it. Truncated copies of storage
+ * write their chunks with a new generation, so evicted chunks of snapshots are never changed.
+ */
+class EntryStore {
+    /** Number of entries in a chunk, power of two. */
+    static final int CHUNK_SIZE = 64;
+    /** Shift to get chunk index from entry position. */
+    private static final int CHUNK_SHIFT = 6;
+    /** Mask to get index in chunk from entry position. */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** Max number of canonical strings of a kind, pool is cleared when it is reached. */
+    private static final int MAX_POOL_SIZE = 1024;
+
+    /** URL scheme divider. */
+    private static final String SCHEME_DIVIDER = "://";
+
+    /** Log tag. */
+    private static final String TAG = "EntryStore";
+
+    /** Slots of entry chunks. Array is replaced when it grows, so snapshots keep a consistent copy. */
+    private Slot[] mSlots;
+    /** Stable IDs of entries by position. Array is replaced when it grows, so snapshots keep a consistent copy. */
+    private long[] mIds;
+    /** Number of stored entries. */
+    private int mSize;
+    /** Number of the first entries written to the repository. */
+    private int mPersistedSize;
+    /** Repository to load evicted chunks from. */
+    private final EntryRepository mRepository;
+    /** Listing of entries in the repository. */
+    private final FeedSource mSource;
+    /** Generation of entries written to the repository by this storage. */
+    private final long mGeneration;
+
+    /** Canonical instances of author names. */
+    private final HashMap<String, String> mAuthors;
+    /** Canonical instances of thumbnail hosts. */
+    private final HashMap<String, String> mHosts;
+
+    /**
+     * Constructor of empty storage.
+     * @param repository Repository to load evicted chunks from.
+     * @param source Listing of entries in the repository.
+     * @param generation Generation of entries written to the repository by this storage.
+     */
+    EntryStore(EntryRepository repository, FeedSource source, long generation) {
+        mSlots = new Slot[4];
+        mIds = new long[CHUNK_SIZE];
+        mRepository = repository;
+        mSource = source;
+        mGeneration = generation;
+        mAuthors = new HashMap<>();
+        mHosts = new HashMap<>();
+    }
+
+    /**
+     * Constructor of storage of entries written to the repository before.
+     * All chunks are evicted, they are loaded when they are accessed.
+     * Entries added later are written with generation of the last chunk.
+     * @param repository Repository to load chunks from.
+     * @param source Listing of entries in the repository.
+     * @param generations Generations of chunks in the repository, not empty.
+     * @param size Number of the listing entries in the repository.
+     * @param ids Stable IDs of the listing entries by position.
+     */
+    EntryStore(EntryRepository repository, FeedSource source, long[] generations, int size, long[] ids) {
+        int capacity = 4;
+        while (capacity < generations.length) {
+            capacity *= 2;
+        }
+        mSlots = new Slot[capacity];
+        mRepository = repository;
+        mSource = source;
+        mGeneration = generations[generations.length - 1];
+        for (int i = 0; i < generations.length; ++i) {
+            mSlots[i] = new Slot(repository, source, generations[i], i, null);
+        }
+        mIds = Arrays.copyOf(ids, Math.max(CHUNK_SIZE, size));
+        mSize = size;
+        mPersistedSize = size;
+        mAuthors = new HashMap<>();
+        mHosts = new HashMap<>();
+    }
+
+    /**
+     * Constructor of storage containing the first entries of other one.
+     * Full chunks are shared since they are never written again, the last partial chunk is copied.
+     * Source storage should not be modified after that.
+     * @param source Source storage.
+     * @param size Number of entries to keep.
+     * @param generation Generation of entries written to the repository by this storage.
+     */
+    private EntryStore(EntryStore source, int size, long generation) {
+        mSlots = new Slot[Math.max(4, source.mSlots.length)];
+        mRepository = source.mRepository;
+        mSource = source.mSource;
+        mGeneration = generation;
+        int fullChunks = size >> CHUNK_SHIFT;
+        System.arraycopy(source.mSlots, 0, mSlots, 0, fullChunks);
+        int tail = size & CHUNK_MASK;
+        if (tail > 0) {
+            // Copied entries are written again with the new generation.
+            mSlots[fullChunks] = new Slot(mRepository, mSource, generation, fullChunks, source.mSlots[fullChunks].get().copyOf(tail));
+        }
+        // IDs following the kept ones are overwritten, while snapshots of source storage still read them.
+        mIds = Arrays.copyOf(source.mIds, Math.max(CHUNK_SIZE, size));
+        mSize = size;
+        mPersistedSize = Math.min(size & ~CHUNK_MASK, source.mPersistedSize);
+        mAuthors = source.mAuthors;
+        mHosts = source.mHosts;
+    }
+
+    /**
+     * Fixed size block of entry fields.
+     */
+    private static class Chunk {
+        final String[] names = new String[CHUNK_SIZE];
+        final String[] titles = new String[CHUNK_SIZE];
+        final String[] authors = new String[CHUNK_SIZE];
+        final String[] thumbnailHosts = new String[CHUNK_SIZE];
+        final String[] thumbnailPaths = new String[CHUNK_SIZE];
+        final long[] createdUtc = new long[CHUNK_SIZE];
+        final int[] numComments = new int[CHUNK_SIZE];
+
+        /**
+         * Copies the first entries of chunk.
+         * @param count Number of entries to copy.
+         * @return new chunk.
+         */
+        Chunk copyOf(int count) {
+            Chunk chunk = new Chunk();
+            System.arraycopy(names, 0, chunk.names, 0, count);
+            System.arraycopy(titles, 0, chunk.titles, 0, count);
+            System.arraycopy(authors, 0, chunk.authors, 0, count);
+            System.arraycopy(thumbnailHosts, 0, chunk.thumbnailHosts, 0, count);
+            System.arraycopy(thumbnailPaths, 0, chunk.thumbnailPaths, 0, count);
+            System.arraycopy(createdUtc, 0, chunk.createdUtc, 0, count);
+            System.arraycopy(numComments, 0, chunk.numComments, 0, count);
+            return chunk;
+        }
+
+        /**
+         * Sets entry fields. Thumbnail URL is split to the deduplicated host and the path.
+         * @param index Entry index in chunk.
+         * @param data Entry data.
+         * @param authorPool Canonical instances of author names.
+         * @param hostPool Canonical instances of thumbnail hosts.
+         */
+        void set(int index, EntryData data, HashMap<String, String> authorPool, HashMap<String, String> hostPool) {
+            names[index] = data.name;
+            titles[index] = data.title;
+            authors[index] = canonical(authorPool, data.author);
+            if (null != data.thumbnail) {
+                int pathStart = data.thumbnail.indexOf('/', data.thumbnail.indexOf(SCHEME_DIVIDER) + SCHEME_DIVIDER.length());
+                if (pathStart > 0) {
+                    thumbnailHosts[index] = canonical(hostPool, data.thumbnail.substring(0, pathStart));
+                    thumbnailPaths[index] = data.thumbnail.substring(pathStart);
+                } else {
+                    // Not an URL, e.g. "self" or "default".
+                    thumbnailHosts[index] = canonical(hostPool, data.thumbnail);
+                }
+            }
+            createdUtc[index] = data.created_utc;
+            numComments[index] = data.num_comments;
+        }
+
+        /**
+         * Creates chunk of entries read from the repository.
+         * Repeated author names and thumbnail hosts of the chunk share the same string instances.
+         * @param entries Entries by index in chunk, missing ones are null.
+         * @return chunk.
+         */
+        static Chunk fromEntries(EntryData[] entries) {
+            HashMap<String, String> pool = new HashMap<>();
+            Chunk chunk = new Chunk();
+            for (int i = 0; i < entries.length; ++i) {
+                if (null != entries[i]) {
+                    chunk.set(i, entries[i], pool, pool);
+                }
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * Holder of chunk which can be evicted when its entries are written to the repository.
+     * Slots of full chunks are shared by snapshots and truncated copies of storage.
+     * Entries of the slot generation are kept in the repository while the slot is used.
+     */
+    private static class Slot {
+        /** Repository to load evicted chunk from. */
+        private final EntryRepository mRepository;
+        /** Listing of entries in the repository. */
+        private final FeedSource mSource;
+        /** Generation of chunk entries in the repository. */
+        private final long mGeneration;
+        /** Chunk index in the listing. */
+        private final int mIndex;
+        /** Chunk in memory, null if it is evicted. Guarded by this. */
+        private Chunk mChunk;
+        /** Flag shows either slot is tracked by {@link ChunkReference}. Guarded by external lock of writer. */
+        private boolean mTracked = false;
+
+        /**
+         * Constructor.
+         * @param repository Repository to load evicted chunk from.
+         * @param source Listing of entries in the repository.
+         * @param generation Generation of chunk entries in the repository.
+         * @param index Chunk index in the listing.
+         * @param chunk Chunk to hold, null if it is evicted.
+         */
+        Slot(EntryRepository repository, FeedSource source, long generation, int index, Chunk chunk) {
+            mRepository = repository;
+            mSource = source;
+            mGeneration = generation;
+            mIndex = index;
+            mChunk = chunk;
+        }
+
+        /**
+         * Gets chunk, loading it from the repository if it is evicted.
+         * @return chunk, empty one if evicted chunk can't be loaded.
+         */
+        synchronized Chunk get() {
+            if (null == mChunk) {
+                try {
+                    mChunk = Chunk.fromEntries(mRepository.getEntries(mSource, mGeneration, mIndex << CHUNK_SHIFT, CHUNK_SIZE));
+                } catch (SQLiteException e) {
+                    Log.w(TAG, "Can't load evicted entries", e);
+                    return new Chunk();
+                }
+            }
+            return mChunk;
+        }
+
+        /**
+         * Evicts chunk from memory. Entries of chunk should be written to the repository.
+         */
+        synchronized void evict() {
+            mChunk = null;
+        }
+    }
+
+    /**
+     * Weak reference to slot which entries are written to the repository.
+     * It is enqueued when slot is not used anymore, so its entries can be removed from the repository.
+     */
+    static class ChunkReference extends WeakReference<Object> {
+        /** Listing of entries. */
+        final FeedSource source;
+        /** Generation of entries. */
+        final long generation;
+        /** Position of the first chunk entry. */
+        final int start;
+
+        /**
+         * Constructor.
+         * @param slot Slot of chunk.
+         * @param queue Queue to enqueue reference to when slot is not used anymore.
+         */
+        private ChunkReference(Slot slot, ReferenceQueue<Object> queue) {
+            super(slot, queue);
+            source = slot.mSource;
+            generation = slot.mGeneration;
+            start = slot.mIndex << CHUNK_SHIFT;
+        }
+    }
+
+    /**
+     * Gets number of stored entries.
+     * @return entry count.
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Marks all stored entries as written to the repository, so their chunks can be evicted.
+     */
+    void setPersisted() {
+        mPersistedSize = mSize;
+    }
+
+    /**
+     * Gets generation of entries written to the repository by this storage.
+     * @return generation.
+     */
+    long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Gets position of the first entry of chunk containing the given one.
+     * Truncated copy of storage writes entries to the repository starting from this position.
+     * @param position Entry position.
+     * @return position of the chunk start.
+     */
+    static int chunkStart(int position) {
+        return position & ~CHUNK_MASK;
+    }
+
+    /**
+     * Creates references to slots written to the repository starting from the given position.
+     * Each slot is tracked once. Should be called under the same lock as {@link #add(EntryData, long)}.
+     * @param start Position of the first written entry.
+     * @param queue Queue to enqueue references of slots which are not used anymore.
+     * @param references Collection to add references to, it should keep them reachable.
+     */
+    void trackChunks(int start, ReferenceQueue<Object> queue, Collection<ChunkReference> references) {
+        int endChunk = (mSize + CHUNK_MASK) >> CHUNK_SHIFT;
+        for (int i = start >> CHUNK_SHIFT; i < endChunk; ++i) {
+            Slot slot = mSlots[i];
+            if (!slot.mTracked) {
+                slot.mTracked = true;
+                references.add(new ChunkReference(slot, queue));
+            }
+        }
+    }
+
+    /**
+     * Gets number of the first entries written to the repository.
+     * @return entry count.
+     */
+    int getPersistedSize() {
+        return mPersistedSize;
+    }
+
+    /**
+     * Adds entry to the end of storage.
+     * @param data Entry data.
+     * @param id Stable entry ID.
+     */
+    void add(EntryData data, long id) {
+        int chunkIndex = mSize >> CHUNK_SHIFT;
+        if (chunkIndex == mSlots.length) {
+            Slot[] slots = new Slot[mSlots.length * 2];
+            System.arraycopy(mSlots, 0, slots, 0, mSlots.length);
+            mSlots = slots;
+        }
+        Slot slot = mSlots[chunkIndex];
+        if (null == slot) {
+            slot = new Slot(mRepository, mSource, mGeneration, chunkIndex, new Chunk());
+            mSlots[chunkIndex] = slot;
+        }
+        // The last chunk is not full, so it is never evicted, but it is loaded after restoring the storage.
+        Chunk chunk = slot.get();
+
+        if (null != data) {
+            chunk.set(mSize & CHUNK_MASK, data, mAuthors, mHosts);
+        }
+        if (mSize == mIds.length) {
+            mIds = Arrays.copyOf(mIds, mIds.length * 2);
+        }
+        mIds[mSize] = id;
+        ++mSize;
+    }
+
+    /**
+     * Creates storage containing the first entries of this one, e.g. to replace the rest.
+     * This storage should not be modified after that, since they share data.
+     * Entries of the last partial chunk are not written with the new generation yet.
+     * @param size Number of entries to keep.
+     * @param generation Generation of entries written to the repository by new storage.
+     * @return new storage.
+     */
+    EntryStore truncate(int size, long generation) {
+        return new EntryStore(this, Math.max(0, Math.min(size, mSize)), generation);
+    }
+
+    /**
+     * Creates read-only view of currently stored entries.
+     * Entries added later are not visible in this view.
+     * @return list of entries.
+     */
+    EntryList snapshot() {
+        return new EntryList(mSlots, mIds, mSize, mPersistedSize);
+    }
+
+    /**
+     * Gets canonical instance of string.
+     * @param pool Map of canonical instances.
+     * @param value String to deduplicate.
+     * @return canonical instance or null if value is null.
+     */
+    private static String canonical(HashMap<String, String> pool, String value) {
+        if (null == value) {
+            return null;
+        }
+        String canonical = pool.get(value);
+        if (null == canonical) {
+            if (pool.size() >= MAX_POOL_SIZE) {
+                // Pool should not grow with the feed. Strings of stored entries are still shared.
+                pool.clear();
+            }
+            pool.put(value, value);
+            canonical = value;
+        }
+        return canonical;
+    }
+
+    /**
+     * Read-only list of stored entries.
+     * {@link Entry} objects are created on access and are not cached,
+     * field getters should be preferred to read single values.
+     */
+    static class EntryList extends AbstractList<Entry> {
+        /** Slots of entry chunks. */
+        private final Slot[] mSlots;
+        /** Stable IDs of entries by position. */
+        private final long[] mIds;
+        /** Number of entries in this view. */
+        private final int mSize;
+        /** Number of the first entries written to the repository. */
+        private final int mPersistedSize;
+
+        /**
+         * Constructor.
+         * @param slots Slots of entry chunks.
+         * @param ids Stable IDs of entries by position.
+         * @param size Number of entries in this view.
+         * @param persistedSize Number of the first entries written to the repository.
+         */
+        private EntryList(Slot[] slots, long[] ids, int size, int persistedSize) {
+            mSlots = slots;
+            mIds = ids;
+            mSize = size;
+            mPersistedSize = persistedSize;
+        }
+
+        /**
+         * @see AbstractList#size()
+         */
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        /**
+         * @see AbstractList#get(int)
+         */
+        @Override
+        public Entry get(int position) {
+            checkPosition(position);
+            EntryData data = new EntryData();
+            data.name = getName(position);
+            data.title = getTitle(position);
+            data.author = getAuthor(position);
+            data.thumbnail = getThumbnail(position);
+            data.created_utc = getCreatedUtc(position);
+            data.num_comments = getNumComments(position);
+
+            Entry entry = new Entry();
+            entry.data = data;
+            return entry;
+        }
+
+        /**
+         * Keeps in memory only full chunks containing entries of the given range, others are evicted
+         * if they are written to the repository. Evicted chunks of the range are loaded back,
+         * so reading them does not wait for disk. The last chunk is never evicted since entries are added to it.
+         * @param first Position of the first entry to keep.
+         * @param last Position of the last entry to keep.
+         */
+        void keepWindow(int first, int last) {
+            int fullChunks = mSize >> CHUNK_SHIFT;
+            int persistedChunks = mPersistedSize >> CHUNK_SHIFT;
+            int firstChunk = Math.max(0, first) >> CHUNK_SHIFT;
+            int lastChunk = Math.max(0, last) >> CHUNK_SHIFT;
+            for (int i = 0; i < fullChunks; ++i) {
+                if (i < firstChunk || i > lastChunk) {
+                    if (i < persistedChunks) {
+                        mSlots[i].evict();
+                    }
+                } else {
+                    mSlots[i].get();
+                }
+            }
+        }
+
+        /**
+         * Counts leading entries which are the same in this and other snapshot.
+         * Chunks shared by snapshots are not compared entry by entry.
+         * @param other Other snapshot.
+         * @return number of the same entries.
+         */
+        int countCommonPrefix(EntryList other) {
+            int size = Math.min(mSize, other.mSize);
+            int position = 0;
+            while (position < size) {
+                int chunkIndex = position >> CHUNK_SHIFT;
+                int chunkEnd = Math.min(size, (chunkIndex + 1) << CHUNK_SHIFT);
+                if (mSlots[chunkIndex] != other.mSlots[chunkIndex]) {
+                    Chunk chunk = mSlots[chunkIndex].get();
+                    Chunk otherChunk = other.mSlots[chunkIndex].get();
+                    for (; position < chunkEnd; ++position) {
+                        int index = position & CHUNK_MASK;
+                        if (!isSame(chunk, otherChunk, index)) {
+                            return position;
+                        }
+                    }
+                }
+                position = chunkEnd;
+            }
+            return size;
+        }
+
+        /**
+         * Gets stable entry ID. Chunk of entry is not loaded.
+         * @param position Entry position.
+         * @return entry ID.
+         */
+        long getId(int position) {
+            checkPosition(position);
+            return mIds[position];
+        }
+
+        /**
+         * Gets entry full name.
+         * @param position Entry position.
+         * @return full name, e.g. "t3_15bfi0".
+         */
+        String getName(int position) {
+            return chunk(position).names[position & CHUNK_MASK];
+        }
+
+        /**
+         * Gets entry title.
+         * @param position Entry position.
+         * @return title.
+         */
+        String getTitle(int position) {
+            return chunk(position).titles[position & CHUNK_MASK];
+        }
+
+        /**
+         * Gets entry author.
+         * @param position Entry position.
+         * @return author name.
+         */
+        String getAuthor(int position) {
+            return chunk(position).authors[position & CHUNK_MASK];
+        }
+
+        /**
+         * Gets entry thumbnail.
+         * @param position Entry position.
+         * @return thumbnail URL or null.
+         */
+        String getThumbnail(int position) {
+            Chunk chunk = chunk(position);
+            String host = chunk.thumbnailHosts[position & CHUNK_MASK];
+            String path = chunk.thumbnailPaths[position & CHUNK_MASK];
+            return (null == path ? host : host + path);
+        }
+
+        /**
+         * Gets entry creation time.
+         * @param position Entry position.
+         * @return UTC time in seconds.
+         */
+        long getCreatedUtc(int position) {
+            return chunk(position).createdUtc[position & CHUNK_MASK];
+        }
+
+        /**
+         * Gets number of entry comments.
+         * @param position Entry position.
+         * @return comment count.
+         */
+        int getNumComments(int position) {
+            return chunk(position).numComments[position & CHUNK_MASK];
+        }
+
+        /**
+         * Gets chunk containing entry.
+         * @param position Entry position.
+         * @return chunk.
+         */
+        private Chunk chunk(int position) {
+            checkPosition(position);
+            return mSlots[position >> CHUNK_SHIFT].get();
+        }
+
+        /**
+         * Informs either entries of two chunks are the same.
+         * @param lhs The first chunk.
+         * @param rhs The second chunk.
+         * @param index Entry index in chunks.
+         * @return true if all entry fields are equal.
+         */
+        private static boolean isSame(Chunk lhs, Chunk rhs, int index) {
+            return lhs.createdUtc[index] == rhs.createdUtc[index]
+                    && lhs.numComments[index] == rhs.numComments[index]
+                    && equals(lhs.names[index], rhs.names[index])
+                    && equals(lhs.titles[index], rhs.titles[index])
+                    && equals(lhs.authors[index], rhs.authors[index])
+                    && equals(lhs.thumbnailHosts[index], rhs.thumbnailHosts[index])
+                    && equals(lhs.thumbnailPaths[index], rhs.thumbnailPaths[index]);
+        }
+
+        /**
+         * Compares strings which may be null.
+         * @param lhs The first string.
+         * @param rhs The second string.
+         * @return true if strings are equal.
+         */
+        private static boolean equals(String lhs, String rhs) {
+            return (null == lhs ? null == rhs : lhs.equals(rhs));
+        }
+
+        /**
+         * Checks entry position.
+         * @param position Entry position.
+         */
+        private void checkPosition(int position) {
+            if (position < 0 || position >= mSize) {
+                throw new IndexOutOfBoundsException("Position " + position + ", size " + mSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.task.redditclient.application;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.net.ConnectivityManager;
+
+import com.task.redditclient.net.Engine;
+
+/**
+ * Job to prefetch the first page of entries in the background,
+ * so the application displays it immediately on launch and revalidates it afterwards.
+ * Job runs periodically while device is idle and charging,
+ * thumbnails are prefetched on unmetered networks only.
+ */
+public class FeedPrefetchService extends JobService implements Engine.Listener {
+    /** Parameters of the running job, null if job is not running. */
+    private JobParameters mParams;
+    /** Handle of the running prefetch request. */
+    private Engine.RequestHandle mRequest;
+
+    /**
+     * Schedules periodic prefetch job unless it is scheduled already.
+     * @param context Context to access job scheduler.
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler)context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (null == scheduler) {
+            return;
+        }
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (Common.PREFETCH_JOB_ID == job.getId()) {
+                return;
+            }
+        }
+
+        JobInfo job = new JobInfo.Builder(Common.PREFETCH_JOB_ID, new ComponentName(context, FeedPrefetchService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .setPeriodic(Common.PREFETCH_INTERVAL)
+                .setPersisted(true)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    /**
+     * @see JobService#onStartJob(JobParameters)
+     */
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        ConnectivityManager connectivity = (ConnectivityManager)getSystemService(Context.CONNECTIVITY_SERVICE);
+        boolean unmetered = (null != connectivity && !connectivity.isActiveNetworkMetered());
+
+        mParams = params;
+        Engine engine = App.getEngine();
+        engine.addListener(this);
+        mRequest = engine.prefetchFeed(unmetered);
+        return true;
+    }
+
+    /**
+     * @see JobService#onStopJob(JobParameters)
+     */
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        App.getEngine().removeListener(this);
+        if (null != mRequest) {
+            mRequest.cancel();
+            mRequest = null;
+        }
+        mParams = null;
+        // Try again when conditions are met.
+        return true;
+    }
+
+    /**
+     * @see Engine.Listener#onRequestCompleted(Engine.Action, Object...)
+     */
+    @Override
+    public void onRequestCompleted(Engine.Action action, Object... data) {
+        if (Engine.Action.PREFETCH_FEED == action) {
+            finish(false);
+        }
+    }
+
+    /**
+     * @see Engine.Listener#onRequestFailed(Engine.Action, Exception)
+     */
+    @Override
+    public void onRequestFailed(Engine.Action action, Exception e) {
+        if (Engine.Action.PREFETCH_FEED == action) {
+            finish(true);
+        }
+    }
+
+    /**
+     * Finishes the running job.
+     * @param reschedule true to retry job with back-off.
+     */
+    private void finish(boolean reschedule) {
+        App.getEngine().removeListener(this);
+        mRequest = null;
+        if (null != mParams) {
+            jobFinished(mParams, reschedule);
+            mParams = null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.task.redditclient.application;
+
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Named markers of the application start up to measure time to the first displayed entry.
+ * Synchronous steps are traced as sections visible in systrace, asynchronous events are
+ * recorded as time marks relative to the application creation. Marks are written to the log
+ * and dumped with activity state. Recording stops when the first entry is displayed.
+ */
+public final class StartupTrace {
+    //! Section names.
+    public static final String APP_CREATE      = "startup:appCreate";
+    public static final String ACTIVITY_CREATE = "startup:activityCreate";
+    public static final String LIST_INFLATE    = "startup:listInflate";
+    //! Mark names.
+    public static final String FIRST_REQUEST   = "startup:firstRequest";
+    public static final String FIRST_RESPONSE  = "startup:firstResponse";
+    public static final String FIRST_ENTRY     = "startup:firstEntry";
+
+    /** Log tag. */
+    private static final String TAG = "Startup";
+
+    /** Application creation time in milliseconds of {@link SystemClock#elapsedRealtime()}. */
+    private static long sStartTime;
+    /** Recorded marks with their times. */
+    private static final ArrayList<String> sMarks = new ArrayList<>();
+    /** Flag shows either the first entry is displayed and recording is stopped. */
+    private static boolean sFinished = false;
+
+    /**
+     * Private constructor, class has static methods only.
+     */
+    private StartupTrace() {
+    }
+
+    /**
+     * Starts measuring, should be called at the beginning of application creation.
+     */
+    static synchronized void start() {
+        sStartTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Begins traced section of start up.
+     * Every call should be paired with {@link #endSection()} in the same thread.
+     * @param name Section name.
+     */
+    public static void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    /**
+     * Ends the last traced section started in the current thread.
+     */
+    public static void endSection() {
+        Trace.endSection();
+    }
+
+    /**
+     * Records start up event. Only the first event with given name is recorded.
+     * @param name Mark name.
+     */
+    public static synchronized void mark(String name) {
+        if (sFinished) {
+            return;
+        }
+        for (String mark : sMarks) {
+            if (mark.startsWith(name + " ")) {
+                return;
+            }
+        }
+
+        // Empty section makes the mark visible in systrace.
+        Trace.beginSection(name);
+        Trace.endSection();
+        String mark = String.format(Locale.US, "%s +%d ms", name, SystemClock.elapsedRealtime() - sStartTime);
+        sMarks.add(mark);
+        Log.i(TAG, mark);
+        if (FIRST_ENTRY.equals(name)) {
+            sFinished = true;
+        }
+    }
+
+    /**
+     * Formats recorded marks.
+     * @return one mark per line.
+     */
+    public static synchronized String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (String mark : sMarks) {
+            builder.append(mark).append('\n');
+        }
+        return builder.toString();
+    }
+}
@@ -1,50 +1,408 @@
 package com.task.redditclient.application;
 
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
 import com.task.redditclient.model.json.Entry;
+import com.task.redditclient.model.json.EntryData;
+import com.task.redditclient.net.FeedSource;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Shared storage to keep application data.
+ * Received entries are written to the repository, so they are restored after the process restart.
+ * Only entries around the viewport are kept in memory, the others are evicted
+ * and are loaded back from the repository when they are accessed, so only entry IDs are kept for the whole feed.
+ * Snapshots of entries may read the repository, so they should be read out of the main thread, except their size.
+ * Replaced entries are kept in the repository until snapshots referencing them are garbage collected.
+ * Each stored entry has a unique stable ID, entries repeated in received pages are dropped.
  */
 public class Storage {
-    /** Received entries */
-    private List<Entry> mEntries;
+    /** Log tag */
+    private static final String TAG = "Storage";
+
+    /** Value which is never used as entry ID, entry IDs are non-negative for links and are less than it for others */
+    public static final long NO_ID = -1;
+    /** Prefix of link full name */
+    private static final String LINK_PREFIX = "t3_";
+    /** Radix of Reddit IDs */
+    private static final int ID_RADIX = 36;
+
+    /** Received entries, null if not received yet */
+    private EntryStore mEntries;
+    /** Listing of received entries, null if not received yet */
+    private FeedSource mSource;
 
     /** The next entry ID from the last "Get entry" response */
     private String mAfter;
 
+    /** Repository to write entries to */
+    private final EntryRepository mRepository;
+    /** Lock to serialize entry updates. Repository is written under it, but not under this, so readers don't wait for disk */
+    private final Object mWriteLock = new Object();
+    /** Queue of chunks which are not used by any snapshot anymore, their entries are removed from the repository */
+    private final ReferenceQueue<Object> mUnusedChunks = new ReferenceQueue<>();
+    /** References to chunks written to the repository, they are kept until chunks are enqueued. Guarded by mWriteLock */
+    private final HashSet<EntryStore.ChunkReference> mChunks = new HashSet<>();
+    /** IDs of entries which full names are not link IDs, by name. Guarded by mWriteLock */
+    private final HashMap<String, Long> mOtherIds = new HashMap<>();
+    /** The last ID given to entry which full name is not link ID. Guarded by mWriteLock */
+    private long mLastOtherId = NO_ID;
+
+    /** Position of the first visible entry */
+    private int mFirstVisible = 0;
+    /** Position of the last visible entry */
+    private int mLastVisible = 0;
+
+    /** Executor to evict and load entries out of the main thread */
+    private final ExecutorService mWindowExecutor = Executors.newSingleThreadExecutor();
+
+    /** Task to apply the current window to the stored entries */
+    private final Runnable mApplyWindow = new Runnable() {
+        @Override
+        public void run() {
+            applyWindow();
+        }
+    };
+
+    /**
+     * Constructor.
+     * @param repository Repository to write entries to.
+     */
+    Storage(EntryRepository repository) {
+        mRepository = repository;
+    }
+
     /**
      * Gets received entries.
+     * Returned list is a read-only snapshot, entries added later are not visible in it.
      * @return Array of entries or null if not recived yet.
      */
-    public List<Entry> getEntries() {
-        return mEntries;
+    public synchronized List<Entry> getEntries() {
+        return (null == mEntries ? null : mEntries.snapshot());
     }
 
     /**
      * Gets entry ID for the next page.
      * @return entry ID or null if it is not received yet.
      */
-    public String getAfter() {
+    public synchronized String getAfter() {
         return mAfter;
     }
 
+    /**
+     * Sets range of visible entries. Entries beyond {@link Common#ENTRY_WINDOW} from it
+     * are evicted from memory and the evicted ones within it are loaded back in the background.
+     * @param first Position of the first visible entry.
+     * @param last Position of the last visible entry.
+     */
+    public void setViewport(int first, int last) {
+        synchronized (this) {
+            if (first == mFirstVisible && last == mLastVisible) {
+                return;
+            }
+            mFirstVisible = first;
+            mLastVisible = last;
+        }
+        mWindowExecutor.execute(mApplyWindow);
+    }
+
+    /**
+     * Restores entries written to the repository by the previous process, if there are no entries yet.
+     * Only entries around the viewport are loaded to memory before they are visible to readers,
+     * others are read by pages when they are accessed.
+     * @param source Listing to restore.
+     * @param maxAge Max age of restored entries, in seconds.
+     * @return age of restored entries in seconds or -1 if they are not restored.
+     */
+    public long restoreEntries(FeedSource source, long maxAge) {
+        synchronized (mWriteLock) {
+            synchronized (this) {
+                if (null != mEntries) {
+                    return -1;
+                }
+            }
+            EntryRepository.Listing listing;
+            try {
+                listing = mRepository.restoreListing(source);
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Can't read entries", e);
+                return -1;
+            }
+            long age = (System.currentTimeMillis() - (null == listing ? 0 : listing.updateTime)) / 1000;
+            if (null == listing || 0 == listing.size || age < 0 || age > maxAge) {
+                return -1;
+            }
+            long[] ids = new long[listing.size];
+            for (int i = 0; i < ids.length; ++i) {
+                ids[i] = idOf(listing.names[i]);
+            }
+            EntryStore entries = new EntryStore(mRepository, source, listing.generations, listing.size, ids);
+            entries.trackChunks(0, mUnusedChunks, mChunks);
+            int first;
+            int last;
+            synchronized (this) {
+                first = mFirstVisible - Common.ENTRY_WINDOW;
+                last = mLastVisible + Common.ENTRY_WINDOW;
+            }
+            entries.snapshot().keepWindow(first, last);
+
+            synchronized (this) {
+                mEntries = entries;
+                mSource = source;
+                mAfter = listing.after;
+            }
+            return age;
+        }
+    }
+
     /**
      * Adds received entries.
+     * The next page is dropped if stored entries are replaced after it was requested,
+     * it is checked under {@link #mWriteLock}, so the page can't be added after a concurrent refresh.
+     * Entries which are already stored, e.g. moved to the next page between requests, are dropped.
+     * @param source Listing of entries.
      * @param entries Array of received entries.
      * @param after The next entry ID.
-     * @param clearPrevious if true existing entries will be removed.
+     * @param requestedAfter Entry ID the page was requested with, null for the first page which replaces existing entries.
+     * @return true if entries are stored, false if the page does not follow stored entries anymore.
+     */
+    public boolean addEntries(FeedSource source, List<Entry> entries, String after, String requestedAfter) {
+        synchronized (mWriteLock) {
+            int start = 0;
+            if (null != requestedAfter) {
+                synchronized (this) {
+                    if (null == mEntries || !source.equals(mSource) || !requestedAfter.equals(mAfter)) {
+                        return false;
+                    }
+                    start = mEntries.size();
+                }
+            }
+            storeEntries(source, start, entries, after);
+            return true;
+        }
+    }
+
+    /**
+     * Replaces entries following the given number of the first ones, e.g. when merged feed is reordered.
+     * Entries of the next page are dropped if stored entries are replaced after it was requested.
+     * @param source Listing of entries.
+     * @param keep Number of the first entries to keep.
+     * @param entries Entries to add after the kept ones.
+     * @param after The next entry ID.
+     * @param requestedAfter Entry ID the page was requested with, null for the first page.
+     * @return true if entries are stored, false if the page does not follow stored entries anymore.
+     */
+    public boolean replaceEntries(FeedSource source, int keep, List<Entry> entries, String after, String requestedAfter) {
+        synchronized (mWriteLock) {
+            int start;
+            synchronized (this) {
+                boolean sameSource = (null != mEntries && source.equals(mSource));
+                if (null != requestedAfter && (!sameSource || !requestedAfter.equals(mAfter))) {
+                    return false;
+                }
+                start = (sameSource ? Math.max(0, Math.min(keep, mEntries.size())) : 0);
+            }
+            storeEntries(source, start, entries, after);
+            return true;
+        }
+    }
+
+    /**
+     * Gets stable ID of entry. Entry itself is not read, so it can be called in the main thread.
+     * @param entries Snapshot returned by {@link #getEntries()}.
+     * @param position Entry position.
+     * @return entry ID, it is unique in the snapshot and is never {@link #NO_ID}.
+     */
+    public static long getId(List<Entry> entries, int position) {
+        return ((EntryStore.EntryList)entries).getId(position);
+    }
+
+    /**
+     * Counts leading entries which are the same in two snapshots, e.g. to find entries changed by an update.
+     * @param lhs The first snapshot returned by {@link #getEntries()}.
+     * @param rhs The second snapshot returned by {@link #getEntries()}.
+     * @return number of the same entries.
+     */
+    public static int countCommonPrefix(List<Entry> lhs, List<Entry> rhs) {
+        return ((EntryStore.EntryList)lhs).countCommonPrefix((EntryStore.EntryList)rhs);
+    }
+
+    /**
+     * Replaces entries starting from the given position. Should be called under {@link #mWriteLock}.
+     * Entries are written to the repository in a single transaction before they are visible to readers.
+     * Replaced entries are kept for previous snapshots, new ones are written with a new generation
+     * starting from the chunk containing the first replaced entry.
+     * If entries before the written ones are not in the repository, e.g. because of an error,
+     * the written listing would have a gap, so entries are kept in memory only.
+     * @param source Listing of entries.
+     * @param start Position of the first replaced entry, 0 to replace all entries.
+     * @param received Entries to add, ones which are stored before start are dropped.
+     * @param after The next entry ID.
+     */
+    private void storeEntries(FeedSource source, int start, List<Entry> received, String after) {
+        removeUnusedChunks();
+
+        // Entries are changed only under mWriteLock, so they are read here out of this lock.
+        EntryStore store = mEntries;
+        List<Entry> entries = dropStored((0 == start ? null : store.snapshot()), start, received);
+        int writeStart = start;
+        List<Entry> written = entries;
+        if (0 == start || start < store.size()) {
+            long generation;
+            try {
+                generation = mRepository.newGeneration();
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Can't write entries", e);
+                generation = -1;
+            }
+            if (0 == start) {
+                store = new EntryStore(mRepository, source, generation);
+            } else {
+                writeStart = EntryStore.chunkStart(start);
+                written = new ArrayList<>(store.snapshot().subList(writeStart, start));
+                written.addAll(entries);
+                store = store.truncate(start, generation);
+            }
+        }
+
+        boolean persisted = false;
+        if (store.getGeneration() >= 0 && writeStart <= store.getPersistedSize()) {
+            try {
+                mRepository.putEntries(source, store.getGeneration(), writeStart, written, after);
+                persisted = true;
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Can't write entries", e);
+            }
+        }
+
+        synchronized (this) {
+            // Previous snapshots keep referencing the old store.
+            mEntries = store;
+            mSource = source;
+            for (Entry entry : entries) {
+                mEntries.add(entry.data, idOf(null == entry.data ? null : entry.data.name));
+            }
+            if (persisted) {
+                mEntries.setPersisted();
+            }
+            mAfter = after;
+        }
+        if (persisted) {
+            store.trackChunks(writeStart, mUnusedChunks, mChunks);
+        }
+        mWindowExecutor.execute(mApplyWindow);
+    }
+
+    /**
+     * Drops entries which are stored before the given position or are repeated in the list,
+     * so stored entries have unique IDs. Should be called under {@link #mWriteLock}.
+     * Only IDs of stored entries are read, so evicted chunks are not loaded.
+     * @param stored Stored entries, null if there are no entries to keep.
+     * @param start Position of the first replaced entry.
+     * @param entries Entries to add.
+     * @return entries which are not stored yet, in the same order.
+     */
+    private List<Entry> dropStored(EntryStore.EntryList stored, int start, List<Entry> entries) {
+        long[] ids = new long[entries.size()];
+        for (int i = 0; i < ids.length; ++i) {
+            EntryData data = entries.get(i).data;
+            // Entries without name are never the same, they get unique IDs when they are stored.
+            ids[i] = (null == data || null == data.name ? NO_ID : idOf(data.name));
+        }
+        long[] sortedIds = ids.clone();
+        Arrays.sort(sortedIds);
+
+        HashSet<Long> found = new HashSet<>();
+        int end = (null == stored ? 0 : Math.min(start, stored.size()));
+        for (int position = 0; position < end; ++position) {
+            long id = stored.getId(position);
+            if (Arrays.binarySearch(sortedIds, id) >= 0) {
+                found.add(id);
+            }
+        }
+
+        ArrayList<Entry> added = new ArrayList<>(entries.size());
+        for (int i = 0; i < ids.length; ++i) {
+            if (NO_ID == ids[i] || found.add(ids[i])) {
+                added.add(entries.get(i));
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Gets stable ID of entry by its full name. Should be called under {@link #mWriteLock}.
+     * IDs of links are their Reddit IDs, other names get negative IDs in order of appearance.
+     * @param name Entry full name, e.g. "t3_15bfi0", or null.
+     * @return entry ID, unique one for each call if name is null.
+     */
+    private long idOf(String name) {
+        if (null != name && name.startsWith(LINK_PREFIX)) {
+            try {
+                long id = Long.parseLong(name.substring(LINK_PREFIX.length()), ID_RADIX);
+                if (id >= 0) {
+                    return id;
+                }
+            } catch (NumberFormatException e) {
+                // Name gets ID below.
+            }
+        }
+        Long id = (null == name ? null : mOtherIds.get(name));
+        if (null == id) {
+            id = --mLastOtherId;
+            if (null != name) {
+                mOtherIds.put(name, id);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Removes entries of chunks which are not used by any snapshot anymore from the repository.
+     * Should be called under {@link #mWriteLock}.
+     */
+    private void removeUnusedChunks() {
+        ArrayList<EntryStore.ChunkReference> unused = new ArrayList<>();
+        for (Reference<?> reference = mUnusedChunks.poll(); null != reference; reference = mUnusedChunks.poll()) {
+            mChunks.remove(reference);
+            unused.add((EntryStore.ChunkReference)reference);
+        }
+        if (!unused.isEmpty()) {
+            try {
+                mRepository.removeChunks(unused);
+            } catch (SQLiteException e) {
+                // Entries are removed by restoring the listing in the next process.
+                Log.w(TAG, "Can't remove entries", e);
+            }
+        }
+    }
+
+    /**
+     * Keeps in memory only entries within window around the visible ones.
+     * Repository is read out of the lock, so adding entries does not wait for it.
      */
-    public synchronized void addEntries(List<Entry> entries, String after, boolean clearPrevious) {
-        if (null == mEntries) {
-            mEntries = entries;
-        } else {
-            if (clearPrevious) {
-                mEntries.clear();
+    private void applyWindow() {
+        EntryStore.EntryList entries;
+        int first;
+        int last;
+        synchronized (this) {
+            if (null == mEntries) {
+                return;
             }
-            mEntries.addAll(entries);
+            entries = mEntries.snapshot();
+            first = mFirstVisible - Common.ENTRY_WINDOW;
+            last = mLastVisible + Common.ENTRY_WINDOW;
         }
-        mAfter = after;
+        entries.keepWindow(first, last);
     }
 }
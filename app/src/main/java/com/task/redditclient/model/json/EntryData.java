@@ -4,9 +4,11 @@ package com.task.redditclient.model.json;
  * JSON container for entry data.
  */
 public class EntryData {
+    public String name;
     public String title;
     public String author;
     public String thumbnail;
     public long created_utc;
     public int num_comments;
+    public int score;
 }
@@ -0,0 +1,398 @@
+package com.task.redditclient.model.json;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Gson adapters of JSON containers without reflective binding.
+ * Only fields declared in containers are read, other values are skipped
+ * without building them, so large Reddit objects are parsed in a single pass.
+ */
+public final class ModelTypeAdapters {
+    //! Field names.
+    private static final String KIND          = "kind";
+    private static final String DATA          = "data";
+    private static final String MODHASH       = "modhash";
+    private static final String AFTER         = "after";
+    private static final String BEFORE        = "before";
+    private static final String CHILDREN      = "children";
+    private static final String NAME          = "name";
+    private static final String TITLE         = "title";
+    private static final String AUTHOR        = "author";
+    private static final String THUMBNAIL     = "thumbnail";
+    private static final String CREATED_UTC   = "created_utc";
+    private static final String NUM_COMMENTS  = "num_comments";
+    private static final String SCORE         = "score";
+    private static final String ACCESS_TOKEN  = "access_token";
+    private static final String TOKEN_TYPE    = "token_type";
+    private static final String EXPIRES_IN    = "expires_in";
+    private static final String SCOPE         = "scope";
+
+    //! Adapter instances, they are stateless.
+    private static final ResponseGetEntriesAdapter RESPONSE_GET_ENTRIES = new ResponseGetEntriesAdapter();
+    private static final ResponseDataAdapter       RESPONSE_DATA        = new ResponseDataAdapter();
+    private static final EntryAdapter              ENTRY                = new EntryAdapter();
+    private static final EntryDataAdapter          ENTRY_DATA           = new EntryDataAdapter();
+    private static final ResponseTokenAdapter      RESPONSE_TOKEN       = new ResponseTokenAdapter();
+
+    /**
+     * Private constructor, class has static methods only.
+     */
+    private ModelTypeAdapters() {
+    }
+
+    /**
+     * Registers adapters of all JSON containers.
+     * @param builder Gson builder.
+     * @return the same builder.
+     */
+    public static GsonBuilder register(GsonBuilder builder) {
+        return builder
+                .registerTypeAdapter(ResponseGetEntries.class, RESPONSE_GET_ENTRIES)
+                .registerTypeAdapter(ResponseData.class, RESPONSE_DATA)
+                .registerTypeAdapter(Entry.class, ENTRY)
+                .registerTypeAdapter(EntryData.class, ENTRY_DATA)
+                .registerTypeAdapter(ResponseToken.class, RESPONSE_TOKEN);
+    }
+
+    /**
+     * Adapter of "Get entries" response.
+     */
+    private static class ResponseGetEntriesAdapter extends TypeAdapter<ResponseGetEntries> {
+        /**
+         * @see TypeAdapter#write(JsonWriter, Object)
+         */
+        @Override
+        public void write(JsonWriter out, ResponseGetEntries value) throws IOException {
+            if (null == value) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name(KIND).value(value.kind);
+            out.name(DATA);
+            RESPONSE_DATA.write(out, value.data);
+            out.endObject();
+        }
+
+        /**
+         * @see TypeAdapter#read(JsonReader)
+         */
+        @Override
+        public ResponseGetEntries read(JsonReader in) throws IOException {
+            if (JsonToken.NULL == in.peek()) {
+                in.nextNull();
+                return null;
+            }
+            ResponseGetEntries value = new ResponseGetEntries();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case KIND:
+                    value.kind = nextString(in);
+                    break;
+                case DATA:
+                    value.data = RESPONSE_DATA.read(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    /**
+     * Adapter of "Get entries" response data.
+     */
+    private static class ResponseDataAdapter extends TypeAdapter<ResponseData> {
+        /**
+         * @see TypeAdapter#write(JsonWriter, Object)
+         */
+        @Override
+        public void write(JsonWriter out, ResponseData value) throws IOException {
+            if (null == value) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name(MODHASH).value(value.modhash);
+            out.name(AFTER).value(value.after);
+            out.name(BEFORE).value(value.before);
+            out.name(CHILDREN);
+            if (null == value.children) {
+                out.nullValue();
+            } else {
+                out.beginArray();
+                for (Entry entry : value.children) {
+                    ENTRY.write(out, entry);
+                }
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        /**
+         * @see TypeAdapter#read(JsonReader)
+         */
+        @Override
+        public ResponseData read(JsonReader in) throws IOException {
+            if (JsonToken.NULL == in.peek()) {
+                in.nextNull();
+                return null;
+            }
+            ResponseData value = new ResponseData();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case MODHASH:
+                    value.modhash = nextString(in);
+                    break;
+                case AFTER:
+                    value.after = nextString(in);
+                    break;
+                case BEFORE:
+                    value.before = nextString(in);
+                    break;
+                case CHILDREN:
+                    value.children = readChildren(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        /**
+         * Reads array of entries.
+         * @param in JSON reader positioned at the array.
+         * @return entries or null.
+         * @throws IOException if JSON is malformed.
+         */
+        private static Entry[] readChildren(JsonReader in) throws IOException {
+            if (JsonToken.NULL == in.peek()) {
+                in.nextNull();
+                return null;
+            }
+            ArrayList<Entry> children = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                children.add(ENTRY.read(in));
+            }
+            in.endArray();
+            return children.toArray(new Entry[children.size()]);
+        }
+    }
+
+    /**
+     * Adapter of entry container.
+     */
+    private static class EntryAdapter extends TypeAdapter<Entry> {
+        /**
+         * @see TypeAdapter#write(JsonWriter, Object)
+         */
+        @Override
+        public void write(JsonWriter out, Entry value) throws IOException {
+            if (null == value) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name(KIND).value(value.kind);
+            out.name(DATA);
+            ENTRY_DATA.write(out, value.data);
+            out.endObject();
+        }
+
+        /**
+         * @see TypeAdapter#read(JsonReader)
+         */
+        @Override
+        public Entry read(JsonReader in) throws IOException {
+            if (JsonToken.NULL == in.peek()) {
+                in.nextNull();
+                return null;
+            }
+            Entry value = new Entry();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case KIND:
+                    value.kind = nextString(in);
+                    break;
+                case DATA:
+                    value.data = ENTRY_DATA.read(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    /**
+     * Adapter of entry data, the rest of about hundred Reddit link fields are skipped.
+     */
+    private static class EntryDataAdapter extends TypeAdapter<EntryData> {
+        /**
+         * @see TypeAdapter#write(JsonWriter, Object)
+         */
+        @Override
+        public void write(JsonWriter out, EntryData value) throws IOException {
+            if (null == value) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name(NAME).value(value.name);
+            out.name(TITLE).value(value.title);
+            out.name(AUTHOR).value(value.author);
+            out.name(THUMBNAIL).value(value.thumbnail);
+            out.name(CREATED_UTC).value(value.created_utc);
+            out.name(NUM_COMMENTS).value(value.num_comments);
+            out.name(SCORE).value(value.score);
+            out.endObject();
+        }
+
+        /**
+         * @see TypeAdapter#read(JsonReader)
+         */
+        @Override
+        public EntryData read(JsonReader in) throws IOException {
+            if (JsonToken.NULL == in.peek()) {
+                in.nextNull();
+                return null;
+            }
+            EntryData value = new EntryData();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case NAME:
+                    value.name = nextString(in);
+                    break;
+                case TITLE:
+                    value.title = nextString(in);
+                    break;
+                case AUTHOR:
+                    value.author = nextString(in);
+                    break;
+                case THUMBNAIL:
+                    value.thumbnail = nextString(in);
+                    break;
+                case CREATED_UTC:
+                    value.created_utc = nextLong(in);
+                    break;
+                case NUM_COMMENTS:
+                    value.num_comments = (int)nextLong(in);
+                    break;
+                case SCORE:
+                    value.score = (int)nextLong(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    /**
+     * Adapter of token response.
+     */
+    private static class ResponseTokenAdapter extends TypeAdapter<ResponseToken> {
+        /**
+         * @see TypeAdapter#write(JsonWriter, Object)
+         */
+        @Override
+        public void write(JsonWriter out, ResponseToken value) throws IOException {
+            if (null == value) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name(ACCESS_TOKEN).value(value.access_token);
+            out.name(TOKEN_TYPE).value(value.token_type);
+            out.name(EXPIRES_IN).value(value.expires_in);
+            out.name(SCOPE).value(value.scope);
+            out.endObject();
+        }
+
+        /**
+         * @see TypeAdapter#read(JsonReader)
+         */
+        @Override
+        public ResponseToken read(JsonReader in) throws IOException {
+            if (JsonToken.NULL == in.peek()) {
+                in.nextNull();
+                return null;
+            }
+            ResponseToken value = new ResponseToken();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case ACCESS_TOKEN:
+                    value.access_token = nextString(in);
+                    break;
+                case TOKEN_TYPE:
+                    value.token_type = nextString(in);
+                    break;
+                case EXPIRES_IN:
+                    value.expires_in = (int)nextLong(in);
+                    break;
+                case SCOPE:
+                    value.scope = nextString(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    /**
+     * Reads string value which may be null.
+     * @param in JSON reader positioned at the value.
+     * @return string or null.
+     * @throws IOException if JSON is malformed.
+     */
+    private static String nextString(JsonReader in) throws IOException {
+        if (JsonToken.NULL == in.peek()) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Reads integral number value, null is read as 0 like in reflective binding of primitives.
+     * @param in JSON reader positioned at the value.
+     * @return number.
+     * @throws IOException if JSON is malformed.
+     */
+    private static long nextLong(JsonReader in) throws IOException {
+        if (JsonToken.NULL == in.peek()) {
+            in.nextNull();
+            return 0;
+        }
+        return in.nextLong();
+    }
+}
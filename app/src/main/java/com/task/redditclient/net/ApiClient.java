@@ -0,0 +1,352 @@
+package com.task.redditclient.net;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.task.redditclient.application.Common;
+import com.task.redditclient.model.json.ModelTypeAdapters;
+import com.task.redditclient.model.json.ResponseGetEntries;
+import com.task.redditclient.model.json.ResponseToken;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Client of back end api without platform dependencies: request parameters,
+ * cache policy of entries, access token and its refresh.
+ * It is used by the engine and by the load harness, so both execute the same request flow.
+ */
+class ApiClient {
+    /**
+     * Interface to receive token updates, e.g. to persist token and schedule its refresh.
+     */
+    interface TokenListener {
+        /**
+         * Called when a new token is received. Called under the token lock.
+         * @param token Access token.
+         * @param expiry Token expiration time in milliseconds.
+         * @param refreshTime Time to refresh token in advance, in milliseconds.
+         */
+        void onTokenReceived(String token, long expiry, long refreshTime);
+    }
+
+    /** URL suffix for "Get token" request */
+    private static final String GET_TOKEN   = "/api/v1/access_token";
+    /** URL suffix for "Get entries" request */
+    private static final String GET_ENTRIES = "/top";
+    /** Listing of the feed unless other listings are set. */
+    static final FeedSource DEFAULT_SOURCE = new FeedSource(GET_ENTRIES, Common.VALUE_TIME);
+
+    /** Body of "Get Token" request */
+    private static final String GET_TOKEN_BODY = "grant_type=https://oauth.reddit.com/grants/installed_client&device_id=%s";
+
+    /** Time URL parameter. */
+    private static final String PARAM_TIME = "t";
+    /** Limit URL parameter. The maximum number of items desired (default: 25, maximum: 100) */
+    private static final String PARAM_LIMIT = "limit";
+    /** After URL parameter. */
+    private static final String PARAM_AFTER = "after";
+
+    /** Time to live of cached first page of entries, in seconds. */
+    static final int CACHE_TTL_ENTRIES = 300;
+    /** Max age of stale first page of entries which is displayed while it is revalidated, in seconds. */
+    static final int CACHE_MAX_STALE_ENTRIES = 86400;
+
+    /** Number of nanoseconds in millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** Time before token expiration when it is refreshed, in milliseconds. */
+    private static final long TOKEN_REFRESH_MARGIN = 5 * 60 * 1000;
+    /** Max part of token lifetime used as refresh margin, so short living tokens are not refreshed at once. */
+    private static final int TOKEN_REFRESH_MARGIN_DIVIDER = 4;
+    /** Token lifetime used when server does not report it, in milliseconds. */
+    private static final long DEFAULT_TOKEN_LIFETIME = 60 * 60 * 1000;
+
+    //! Endpoints.
+    private final String mBaseUrl;
+    private final String mOauthUrl;
+    /** User agent identifier */
+    private final String mUserAgent;
+    /** Authorization header value of "Get token" request, null to send it without authorization. */
+    private final String mClientAuthorization;
+    /** Device ID of this installation */
+    private final String mDeviceId;
+    /** Listener of token updates, may be null. */
+    private final TokenListener mTokenListener;
+    /** Policy to choose number of entries per request, it is updated with measured responses. */
+    private final PageSizePolicy mPageSizePolicy;
+
+    /** JSON parser, built on the first use in a background thread. Guarded by this. */
+    private Gson mGson;
+
+    /** Reddit access token. Guarded by mTokenLock. */
+    private String mToken;
+    /** Token expiration time in milliseconds. Guarded by mTokenLock. */
+    private long mTokenExpiry;
+    /** Time to refresh token in advance, in milliseconds. Guarded by mTokenLock. */
+    private long mTokenRefreshTime;
+    /** Lock to access and refresh token. */
+    private final Object mTokenLock = new Object();
+
+    /**
+     * Constructor.
+     * @param baseUrl Endpoint of "Get token" request, without trailing slash.
+     * @param oauthUrl Endpoint of authenticated requests, without trailing slash.
+     * @param userAgent User agent identifier.
+     * @param clientAuthorization Authorization header value of "Get token" request, null to send it without authorization.
+     * @param deviceId Device ID of this installation.
+     * @param pageSizePolicy Policy to update with measured responses.
+     * @param tokenListener Listener of token updates, may be null.
+     */
+    ApiClient(String baseUrl, String oauthUrl, String userAgent, String clientAuthorization, String deviceId,
+            PageSizePolicy pageSizePolicy, TokenListener tokenListener) {
+        mBaseUrl = baseUrl;
+        mOauthUrl = oauthUrl;
+        mUserAgent = userAgent;
+        mClientAuthorization = clientAuthorization;
+        mDeviceId = deviceId;
+        mPageSizePolicy = pageSizePolicy;
+        mTokenListener = tokenListener;
+    }
+
+    /**
+     * Gets JSON parser, building it on the first call.
+     * @return JSON parser.
+     */
+    private synchronized Gson getGson() {
+        if (null == mGson) {
+            mGson = ModelTypeAdapters.register(new GsonBuilder()).create();
+        }
+        return mGson;
+    }
+
+    /**
+     * Gets URL of a listing.
+     * @param source Listing.
+     * @return listing URL.
+     */
+    String getListingUrl(FeedSource source) {
+        return mOauthUrl + source.path;
+    }
+
+    /**
+     * Sets token persisted before, listener is not called.
+     * @param token Access token, null if there is no token.
+     * @param expiry Token expiration time in milliseconds.
+     * @param refreshTime Time to refresh token in advance, in milliseconds, 0 to refresh it before default margin.
+     */
+    void setToken(String token, long expiry, long refreshTime) {
+        synchronized (mTokenLock) {
+            mToken = token;
+            mTokenExpiry = expiry;
+            mTokenRefreshTime = (0 != refreshTime ? refreshTime : expiry - TOKEN_REFRESH_MARGIN);
+        }
+    }
+
+    /**
+     * Informs either there is a token which is not expired.
+     * @return true if client is authenticated, otherwise false.
+     */
+    boolean isAuthenticated() {
+        synchronized (mTokenLock) {
+            return null != mToken && System.currentTimeMillis() < mTokenExpiry;
+        }
+    }
+
+    /**
+     * Makes sure there is a token which is not going to expire soon, requests a new one otherwise.
+     * @throws Exception if request is failed.
+     */
+    void ensureToken() throws Exception {
+        synchronized (mTokenLock) {
+            if (null == mToken || System.currentTimeMillis() > mTokenRefreshTime) {
+                executeGetToken();
+            }
+        }
+    }
+
+    /**
+     * Drops token rejected by the server, so the next {@link #ensureToken()} requests a new one.
+     * @param token Rejected token.
+     */
+    void invalidateToken(String token) {
+        synchronized (mTokenLock) {
+            if (null != token && token.equals(mToken)) {
+                mToken = null;
+            }
+        }
+    }
+
+    /**
+     * Gets current token.
+     * @return access token.
+     */
+    String getAccessToken() {
+        synchronized (mTokenLock) {
+            return mToken;
+        }
+    }
+
+    /**
+     * Executes get token request and notifies listener about received token.
+     * Should be called under mTokenLock.
+     * @throws Exception if request is failed.
+     */
+    private void executeGetToken() throws Exception {
+        ArrayList<KeyValue> header = new ArrayList<>(2);
+        if (null != mClientAuthorization) {
+            header.add(new KeyValue(NetManager.KEY_AUTHORIZATION, mClientAuthorization));
+        }
+        header.add(new KeyValue(NetManager.KEY_ACCEPT, NetManager.VAL_APPLICATION_JSON));
+
+        String respStr = NetManager.post((mBaseUrl + GET_TOKEN), header, String.format(Locale.getDefault(), GET_TOKEN_BODY, mDeviceId));
+        long parseStartTime = System.nanoTime();
+        ResponseToken token = getGson().fromJson(respStr, ResponseToken.class);
+        RequestMetrics.addParseTime(System.nanoTime() - parseStartTime);
+        long lifetime = (token.expires_in > 0 ? token.expires_in * 1000L : DEFAULT_TOKEN_LIFETIME);
+        mToken = token.access_token;
+        mTokenExpiry = System.currentTimeMillis() + lifetime;
+        mTokenRefreshTime = mTokenExpiry - Math.min(TOKEN_REFRESH_MARGIN, lifetime / TOKEN_REFRESH_MARGIN_DIVIDER);
+        if (null != mTokenListener) {
+            mTokenListener.onTokenReceived(mToken, mTokenExpiry, mTokenRefreshTime);
+        }
+    }
+
+    /**
+     * Gets the first page of a listing from the disk cache.
+     * @param source Listing.
+     * @param urlParams Request parameters.
+     * @return cached response or null if there is no usable response in cache.
+     * @throws Exception if cached response can't be parsed.
+     */
+    NetManager.CachedResponse<ResponseGetEntries> getCachedEntries(FeedSource source, List<KeyValue> urlParams) throws Exception {
+        return NetManager.getFromCache(getListingUrl(source), urlParams,
+                CACHE_TTL_ENTRIES, CACHE_MAX_STALE_ENTRIES, new EntriesParser());
+    }
+
+    /**
+     * Gets entries of a listing, the first page is served from the disk cache while it is fresh.
+     * @param source Listing.
+     * @param urlParams Request parameters.
+     * @param firstPage true if the first page is requested.
+     * @return cached or received response.
+     * @throws Exception if request is failed.
+     */
+    ResponseGetEntries getEntries(FeedSource source, List<KeyValue> urlParams, boolean firstPage) throws Exception {
+        if (firstPage) {
+            NetManager.CachedResponse<ResponseGetEntries> cached = getCachedEntries(source, urlParams);
+            if (null != cached && cached.isFresh) {
+                return cached.response;
+            }
+        }
+        return requestEntries(getListingUrl(source), urlParams, firstPage);
+    }
+
+    /**
+     * Requests entries with a valid token.
+     * @param url Listing URL.
+     * @param urlParams Request parameters.
+     * @param firstPage true if the first page is requested, it is stored in the disk cache.
+     * @return received response.
+     * @throws Exception if request is failed.
+     */
+    ResponseGetEntries requestEntries(String url, List<KeyValue> urlParams, boolean firstPage) throws Exception {
+        ensureToken();
+        String token = getAccessToken();
+        try {
+            return requestEntries(url, token, urlParams, firstPage);
+        } catch (HttpException e) {
+            if (HttpURLConnection.HTTP_UNAUTHORIZED != e.getStatusCode()) {
+                throw e;
+            }
+            // Token is revoked or expired earlier than expected, refresh it and retry once.
+            invalidateToken(token);
+            ensureToken();
+            return requestEntries(url, getAccessToken(), urlParams, firstPage);
+        }
+    }
+
+    /**
+     * Requests entries from the network and measures response to adapt page size.
+     * Responses served from the cache are not measured.
+     * @param url Listing URL.
+     * @param token Access token.
+     * @param urlParams Request parameters.
+     * @param firstPage true if the first page is requested, it is stored in the disk cache.
+     * @return received response.
+     * @throws Exception if request is failed.
+     */
+    private ResponseGetEntries requestEntries(String url, String token, List<KeyValue> urlParams, boolean firstPage) throws Exception {
+        EntriesParser parser = new EntriesParser();
+        long startTime = System.nanoTime();
+        ResponseGetEntries response = NetManager.get(url, authorizedHeader(token), urlParams, parser, firstPage);
+
+        // Revalidated response is parsed from the disk cache, its read speed is not a network sample.
+        // Listings of a merged feed share metrics, so a page with any revalidated listing is skipped.
+        RequestMetrics metrics = RequestMetrics.current();
+        boolean fromCache = null != metrics && metrics.isFromCache();
+        CountingInputStream countingStream = parser.mCountingStream;
+        if (!fromCache && null != countingStream && countingStream.getCount() > 0 && null != response.data.children) {
+            long firstByteTime = countingStream.getFirstByteTime();
+            mPageSizePolicy.onPageReceived(response.data.children.length, countingStream.getCount(),
+                    (firstByteTime - startTime) / NANOS_PER_MILLI, (System.nanoTime() - firstByteTime) / NANOS_PER_MILLI);
+        }
+        return response;
+    }
+
+    /**
+     * Builds listing request parameters.
+     * @param source Listing.
+     * @param limit Number of entries to request.
+     * @param after Entry ID to get the next page, null for the first page.
+     * @return list of URL parameters.
+     */
+    static List<KeyValue> sourceParams(FeedSource source, int limit, String after) {
+        ArrayList<KeyValue> urlParams = new ArrayList<>(3);
+        if (null != source.time) {
+            urlParams.add(new KeyValue(PARAM_TIME, source.time));
+        }
+        urlParams.add(new KeyValue(PARAM_LIMIT, String.valueOf(limit)));
+        if (null != after) {
+            urlParams.add(new KeyValue(PARAM_AFTER, after));
+        }
+        return urlParams;
+    }
+
+    /**
+     * Builds header of authenticated request.
+     * @param token Access token.
+     * @return list of header fields.
+     */
+    private ArrayList<KeyValue> authorizedHeader(String token) {
+        ArrayList<KeyValue> header = new ArrayList<>(3);
+        header.add(new KeyValue(NetManager.KEY_AUTHORIZATION, "bearer " + token));
+        header.add(new KeyValue(NetManager.KEY_USER_AGENT, mUserAgent));
+        header.add(new KeyValue(NetManager.KEY_ACCEPT, NetManager.VAL_APPLICATION_JSON));
+        return header;
+    }
+
+    /**
+     * Parser to build entries directly from response stream.
+     * It counts received bytes to measure the response, they are counted after decompression
+     * like entry size, so page size estimation does not depend on compression.
+     */
+    private class EntriesParser implements NetManager.ResponseParser<ResponseGetEntries> {
+        /** Stream to count received bytes. */
+        private CountingInputStream mCountingStream;
+
+        /**
+         * @see NetManager.ResponseParser#parse(InputStream, String)
+         */
+        @Override
+        public ResponseGetEntries parse(InputStream inStream, String charset) throws Exception {
+            mCountingStream = new CountingInputStream(inStream);
+            JsonReader reader = new JsonReader(new InputStreamReader(mCountingStream, charset));
+            return getGson().fromJson(reader, ResponseGetEntries.class);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.task.redditclient.net;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream which stops reading when request executed in the current thread is cancelled.
+ * Parsers read responses by chunks, so cancellation is checked between parse steps.
+ */
+class CancellableInputStream extends FilterInputStream {
+    /**
+     * Constructor.
+     * @param inStream Source stream.
+     */
+    CancellableInputStream(InputStream inStream) {
+        super(inStream);
+    }
+
+    /**
+     * @see FilterInputStream#read()
+     */
+    @Override
+    public int read() throws IOException {
+        CancellationToken.throwIfCancelled();
+        return super.read();
+    }
+
+    /**
+     * @see FilterInputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        CancellationToken.throwIfCancelled();
+        return super.read(buffer, offset, count);
+    }
+
+    /**
+     * @see FilterInputStream#skip(long)
+     */
+    @Override
+    public long skip(long count) throws IOException {
+        CancellationToken.throwIfCancelled();
+        return super.skip(count);
+    }
+}
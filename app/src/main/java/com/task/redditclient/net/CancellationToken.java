@@ -0,0 +1,101 @@
+package com.task.redditclient.net;
+
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+
+/**
+ * Cancellation state of a request executed in background threads.
+ * Network code attaches opened connections to the token bound to the current thread,
+ * so cancellation from another thread closes the connections and aborts blocked reads.
+ * A token may be bound to several threads when request fetches data in parallel.
+ */
+class CancellationToken {
+    /** Token of the request executed in the current thread. */
+    private static final ThreadLocal<CancellationToken> sCurrent = new ThreadLocal<>();
+    /** Connection attached by the current thread. */
+    private static final ThreadLocal<HttpURLConnection> sConnection = new ThreadLocal<>();
+
+    /** Flag shows either request is cancelled. */
+    private volatile boolean mCancelled;
+    /** Connections which are currently used by the request threads, guarded by this. */
+    private final ArrayList<HttpURLConnection> mConnections = new ArrayList<>(1);
+
+    /**
+     * Binds token to the current thread.
+     */
+    void bind() {
+        sCurrent.set(this);
+    }
+
+    /**
+     * Unbinds token from the current thread.
+     */
+    void unbind() {
+        if (this == sCurrent.get()) {
+            sCurrent.remove();
+        }
+        HttpURLConnection connection = sConnection.get();
+        sConnection.remove();
+        synchronized (this) {
+            mConnections.remove(connection);
+        }
+    }
+
+    /**
+     * Cancels request and closes its connection. May be called from any thread.
+     */
+    void cancel() {
+        ArrayList<HttpURLConnection> connections;
+        synchronized (this) {
+            mCancelled = true;
+            connections = new ArrayList<>(mConnections);
+            mConnections.clear();
+        }
+        for (HttpURLConnection connection : connections) {
+            // Closes the socket, blocked reads in the request thread fail immediately.
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Informs either request is cancelled.
+     * @return true if request is cancelled.
+     */
+    boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * Attaches connection to the token bound to the current thread.
+     * @param connection Opened connection.
+     * @throws InterruptedIOException if request is cancelled already.
+     */
+    static void attach(HttpURLConnection connection) throws InterruptedIOException {
+        CancellationToken token = sCurrent.get();
+        if (null != token) {
+            synchronized (token) {
+                if (!token.mCancelled) {
+                    // Previous connection of this thread is done.
+                    token.mConnections.remove(sConnection.get());
+                    token.mConnections.add(connection);
+                    sConnection.set(connection);
+                    return;
+                }
+            }
+            connection.disconnect();
+            throw new InterruptedIOException("Request is cancelled");
+        }
+    }
+
+    /**
+     * Throws exception if request executed in the current thread is cancelled.
+     * @throws InterruptedIOException if request is cancelled.
+     */
+    static void throwIfCancelled() throws InterruptedIOException {
+        CancellationToken token = sCurrent.get();
+        if (null != token && token.mCancelled) {
+            throw new InterruptedIOException("Request is cancelled");
+        }
+    }
+}
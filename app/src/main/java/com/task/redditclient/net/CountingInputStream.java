@@ -0,0 +1,103 @@
+package com.task.redditclient.net;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Stream which counts read bytes, measures time spent reading
+ * and remembers when the first byte was received.
+ */
+class CountingInputStream extends FilterInputStream {
+    /** Number of read bytes. */
+    private long mCount;
+    /** Time when the first byte was read, in nanoseconds of {@link System#nanoTime()}, valid if count is not 0. */
+    private long mFirstByteTime;
+    /** Time spent in reading from the source stream, in nanoseconds. */
+    private long mReadTime;
+
+    /**
+     * Constructor.
+     * @param inStream Source stream.
+     */
+    CountingInputStream(InputStream inStream) {
+        super(inStream);
+    }
+
+    /**
+     * Gets number of read bytes.
+     * @return byte count.
+     */
+    long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Gets time when the first byte was read.
+     * @return time in nanoseconds of {@link System#nanoTime()}, it is valid only if something is read.
+     */
+    long getFirstByteTime() {
+        return mFirstByteTime;
+    }
+
+    /**
+     * Gets time spent in reading from the source stream.
+     * @return time in nanoseconds.
+     */
+    long getReadTime() {
+        return mReadTime;
+    }
+
+    /**
+     * @see FilterInputStream#read()
+     */
+    @Override
+    public int read() throws IOException {
+        long startTime = System.nanoTime();
+        int b = super.read();
+        mReadTime += System.nanoTime() - startTime;
+        if (-1 != b) {
+            onRead(1);
+        }
+        return b;
+    }
+
+    /**
+     * @see FilterInputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        long startTime = System.nanoTime();
+        int read = super.read(buffer, offset, count);
+        mReadTime += System.nanoTime() - startTime;
+        if (read > 0) {
+            onRead(read);
+        }
+        return read;
+    }
+
+    /**
+     * @see FilterInputStream#skip(long)
+     */
+    @Override
+    public long skip(long count) throws IOException {
+        long startTime = System.nanoTime();
+        long skipped = super.skip(count);
+        mReadTime += System.nanoTime() - startTime;
+        if (skipped > 0) {
+            onRead(skipped);
+        }
+        return skipped;
+    }
+
+    /**
+     * Counts read bytes.
+     * @param count Number of read bytes.
+     */
+    private void onRead(long count) {
+        if (0 == mCount) {
+            mFirstByteTime = System.nanoTime();
+        }
+        mCount += count;
+    }
+}
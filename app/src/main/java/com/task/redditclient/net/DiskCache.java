@@ -0,0 +1,563 @@
+package com.task.redditclient.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent LRU cache of HTTP response bodies keyed by URL.
+ * Each entry is stored in a separate file which contains cache metadata
+ * (store time, server max-age and validators) followed by the response body.
+ * Total size of entries is limited, the least recently used entries are removed first.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DiskCache {
+    /** Extension of entry file while it is written. */
+    private static final String TMP_SUFFIX = ".tmp";
+    /** Hash algorithm to build file names from URLs. */
+    private static final String KEY_ALGORITHM = "MD5";
+    /** Offset of store time in entry file. */
+    private static final int STORE_TIME_OFFSET = 0;
+
+    /** Directory to keep entry files. */
+    private final File mDirectory;
+    /** Max total size of entry files in bytes. */
+    private final long mMaxSize;
+    /** Entry file sizes in access order, the eldest entry goes first. Null until directory is scanned. */
+    private LinkedHashMap<String, Long> mEntries;
+    /** Current total size of entry files in bytes. */
+    private long mSize;
+
+    //! Cache statistics.
+    private int mHitCount;
+    private int mStaleHitCount;
+    private int mMissCount;
+    private int mRevalidatedCount;
+
+    /**
+     * Cached response.
+     * Caller has to close it when response body is not needed anymore.
+     */
+    public static class Snapshot {
+        /** Time when response was received from the network, in milliseconds. */
+        public final long storeTime;
+        /** Server max-age value in seconds, or -1 if response has no max-age directive. */
+        public final int maxAge;
+        /** ETag validator or null. */
+        public final String eTag;
+        /** Last-Modified validator or null. */
+        public final String lastModified;
+        /** Response body. */
+        public final InputStream body;
+
+        /**
+         * Constructor.
+         * @param storeTime Time when response was received from the network.
+         * @param maxAge Server max-age value in seconds.
+         * @param eTag ETag validator.
+         * @param lastModified Last-Modified validator.
+         * @param body Response body.
+         */
+        Snapshot(long storeTime, int maxAge, String eTag, String lastModified, InputStream body) {
+            this.storeTime = storeTime;
+            this.maxAge = maxAge;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+
+        /**
+         * Gets age of cached response.
+         * @return age in seconds.
+         */
+        public long getAge() {
+            return (System.currentTimeMillis() - storeTime) / 1000;
+        }
+
+        /**
+         * Closes response body.
+         */
+        public void close() {
+            try {
+                body.close();
+            } catch (IOException e) {
+                // Nothing to do.
+            }
+        }
+    }
+
+    /**
+     * Writer of a new cache entry.
+     * The entry becomes visible only after {@link #commit()}.
+     */
+    public class Editor {
+        /** Entry key. */
+        private final String mKey;
+        /** Temporary file to write entry. */
+        private final File mTmpFile;
+        /** Stream to write response body. */
+        private final OutputStream mOutStream;
+        /** Flag shows either editor is closed already or not. */
+        private boolean mDone = false;
+
+        /**
+         * Constructor.
+         * @param key Entry key.
+         * @param tmpFile Temporary file to write entry.
+         * @param outStream Stream to write response body.
+         */
+        private Editor(String key, File tmpFile, OutputStream outStream) {
+            mKey = key;
+            mTmpFile = tmpFile;
+            mOutStream = outStream;
+        }
+
+        /**
+         * Gets stream to write response body.
+         * @return output stream.
+         */
+        public OutputStream getOutputStream() {
+            return mOutStream;
+        }
+
+        /**
+         * Publishes written entry replacing previous one with the same key.
+         * @throws IOException if entry can't be saved.
+         */
+        public void commit() throws IOException {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            mOutStream.close();
+            publish(mKey, mTmpFile);
+        }
+
+        /**
+         * Discards written data.
+         */
+        public void abort() {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            try {
+                mOutStream.close();
+            } catch (IOException e) {
+                // Nothing to do.
+            }
+            //noinspection ResultOfMethodCallIgnored
+            mTmpFile.delete();
+        }
+    }
+
+    /**
+     * Constructor.
+     * Cache directory is scanned lazily on the first access.
+     * @param directory Directory to keep cached responses.
+     * @param maxSize Max total size of cached responses in bytes.
+     */
+    public DiskCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Gets cached response.
+     * @param url Full request URL.
+     * @return cached response or null if there is no entry for this URL.
+     */
+    public Snapshot get(String url) {
+        String key = keyOf(url);
+        File file;
+        synchronized (this) {
+            ensureIndex();
+            if (null == mEntries.get(key)) {
+                return null;
+            }
+            file = new File(mDirectory, key);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+
+        DataInputStream inStream = null;
+        try {
+            inStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            long storeTime = inStream.readLong();
+            int maxAge = inStream.readInt();
+            String eTag = readNullableString(inStream);
+            String lastModified = readNullableString(inStream);
+            return new Snapshot(storeTime, maxAge, eTag, lastModified, inStream);
+        } catch (IOException e) {
+            closeQuietly(inStream);
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Starts writing of a new entry.
+     * @param url Full request URL.
+     * @param maxAge Server max-age value in seconds, or -1 if absent.
+     * @param eTag ETag validator or null.
+     * @param lastModified Last-Modified validator or null.
+     * @return editor to write response body.
+     * @throws IOException if entry can't be created.
+     */
+    public Editor edit(String url, int maxAge, String eTag, String lastModified) throws IOException {
+        String key = keyOf(url);
+        synchronized (this) {
+            ensureIndex();
+        }
+        File tmpFile = new File(mDirectory, key + "." + Thread.currentThread().getId() + TMP_SUFFIX);
+        DataOutputStream outStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            outStream.writeLong(System.currentTimeMillis());
+            outStream.writeInt(maxAge);
+            writeNullableString(outStream, eTag);
+            writeNullableString(outStream, lastModified);
+        } catch (IOException e) {
+            closeQuietly(outStream);
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+            throw e;
+        }
+        return new Editor(key, tmpFile, outStream);
+    }
+
+    /**
+     * Marks cached response as just received, e.g. after server confirmed it is not modified.
+     * @param url Full request URL.
+     */
+    public void touch(String url) {
+        String key = keyOf(url);
+        synchronized (this) {
+            ensureIndex();
+            if (null == mEntries.get(key)) {
+                return;
+            }
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(new File(mDirectory, key), "rw");
+            file.seek(STORE_TIME_OFFSET);
+            file.writeLong(System.currentTimeMillis());
+        } catch (IOException e) {
+            remove(key);
+        } finally {
+            closeQuietly(file);
+        }
+    }
+
+    /**
+     * Gets number of requests served from cache without network access.
+     * @return hit count.
+     */
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Gets number of requests served from expired cache entries before revalidation.
+     * @return stale hit count.
+     */
+    public synchronized int getStaleHitCount() {
+        return mStaleHitCount;
+    }
+
+    /**
+     * Gets number of cache lookups which found no usable entry.
+     * @return miss count.
+     */
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Gets number of network requests answered with "Not modified".
+     * @return revalidated count.
+     */
+    public synchronized int getRevalidatedCount() {
+        return mRevalidatedCount;
+    }
+
+    /**
+     * Gets current size of cache.
+     * @return size in bytes.
+     */
+    public synchronized long getSize() {
+        ensureIndex();
+        return mSize;
+    }
+
+    /**
+     * Counts served cache lookup.
+     * @param fresh true if entry was fresh, false if it was stale.
+     */
+    synchronized void recordHit(boolean fresh) {
+        if (fresh) {
+            ++mHitCount;
+        } else {
+            ++mStaleHitCount;
+        }
+    }
+
+    /**
+     * Counts cache lookup without usable entry.
+     */
+    synchronized void recordMiss() {
+        ++mMissCount;
+    }
+
+    /**
+     * Counts successful revalidation.
+     */
+    synchronized void recordRevalidated() {
+        ++mRevalidatedCount;
+    }
+
+    /**
+     * Replaces entry file with written temporary file and trims cache to the max size.
+     * @param key Entry key.
+     * @param tmpFile Written temporary file.
+     * @throws IOException if file can't be renamed.
+     */
+    private synchronized void publish(String key, File tmpFile) throws IOException {
+        File file = new File(mDirectory, key);
+        if (!tmpFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+            throw new IOException("Unable to save cache entry " + file);
+        }
+        Long previousSize = mEntries.remove(key);
+        if (null != previousSize) {
+            mSize -= previousSize;
+        }
+        mEntries.put(key, file.length());
+        mSize += file.length();
+        trim();
+    }
+
+    /**
+     * Removes entry.
+     * @param key Entry key.
+     */
+    private synchronized void remove(String key) {
+        Long size = mEntries.remove(key);
+        if (null != size) {
+            mSize -= size;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        new File(mDirectory, key).delete();
+    }
+
+    /**
+     * Removes the least recently used entries until cache fits the max size.
+     */
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            mSize -= eldest.getValue();
+            iterator.remove();
+            //noinspection ResultOfMethodCallIgnored
+            new File(mDirectory, eldest.getKey()).delete();
+        }
+    }
+
+    /**
+     * Builds in-memory index of entry files ordered by last access time.
+     * Should be called under lock.
+     */
+    private void ensureIndex() {
+        if (null != mEntries) {
+            return;
+        }
+        mEntries = new LinkedHashMap<>(16, 0.75f, true);
+        mSize = 0;
+
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.mkdirs();
+        File[] files = mDirectory.listFiles();
+        if (null == files) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long diff = lhs.lastModified() - rhs.lastModified();
+                return (diff < 0 ? -1 : (diff > 0 ? 1 : 0));
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(TMP_SUFFIX)) {
+                // Unfinished entry of the previous session.
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            } else {
+                mEntries.put(file.getName(), file.length());
+                mSize += file.length();
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Builds entry key from URL, it is also used to name files of partial downloads.
+     * @param url Full request URL.
+     * @return hex string hash of URL.
+     */
+    static String keyOf(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance(KEY_ALGORITHM).digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16));
+                key.append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return String.valueOf(url.hashCode());
+        }
+    }
+
+    /**
+     * Writes string which may be null.
+     * @param outStream Stream to write.
+     * @param value Value to write.
+     * @throws IOException if error occurs.
+     */
+    private static void writeNullableString(DataOutputStream outStream, String value) throws IOException {
+        outStream.writeBoolean(null != value);
+        if (null != value) {
+            outStream.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads string written by {@link #writeNullableString(DataOutputStream, String)}.
+     * @param inStream Stream to read.
+     * @return read value.
+     * @throws IOException if error occurs.
+     */
+    private static String readNullableString(DataInputStream inStream) throws IOException {
+        return inStream.readBoolean() ? inStream.readUTF() : null;
+    }
+
+    /**
+     * Closes resource ignoring errors.
+     * @param closeable Resource to close.
+     */
+    private static void closeQuietly(Closeable closeable) {
+        if (null != closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing to do.
+            }
+        }
+    }
+
+    /**
+     * Stream which copies all read data into cache editor.
+     * Entry is committed only if the whole source stream is read.
+     */
+    static class TeeInputStream extends FilterInputStream {
+        /** Editor to write data. */
+        private final Editor mEditor;
+        /** Flag shows either the end of source stream is reached. */
+        private boolean mEndReached = false;
+
+        /**
+         * Constructor.
+         * @param inStream Source stream.
+         * @param editor Editor to write data.
+         */
+        TeeInputStream(InputStream inStream, Editor editor) {
+            super(inStream);
+            mEditor = editor;
+        }
+
+        /**
+         * @see FilterInputStream#read()
+         */
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (-1 == b) {
+                mEndReached = true;
+            } else {
+                mEditor.getOutputStream().write(b);
+            }
+            return b;
+        }
+
+        /**
+         * @see FilterInputStream#read(byte[], int, int)
+         */
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (-1 == read) {
+                mEndReached = true;
+            } else {
+                mEditor.getOutputStream().write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        /**
+         * @see FilterInputStream#skip(long)
+         */
+        @Override
+        public long skip(long count) throws IOException {
+            // Skipped data has to be written too, so read it.
+            byte[] buffer = new byte[(int)Math.min(count, 4096)];
+            int read = read(buffer, 0, buffer.length);
+            return (-1 == read ? 0 : read);
+        }
+
+        /**
+         * @see FilterInputStream#markSupported()
+         */
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Closes source stream and commits entry if the whole stream is read, otherwise discards it.
+         * @see FilterInputStream#close()
+         */
+        @Override
+        public void close() throws IOException {
+            super.close();
+            if (mEndReached) {
+                try {
+                    mEditor.commit();
+                } catch (IOException e) {
+                    // Response is delivered anyway, it is just not cached.
+                }
+            } else {
+                mEditor.abort();
+            }
+        }
+    }
+}
@@ -1,27 +1,35 @@
 package com.task.redditclient.net;
 
+import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Base64;
 import android.util.Log;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestOptions;
 import com.task.redditclient.application.App;
-import com.task.redditclient.application.Common;
+import com.task.redditclient.application.Storage;
 import com.task.redditclient.model.json.Entry;
+import com.task.redditclient.model.json.ResponseData;
 import com.task.redditclient.model.json.ResponseGetEntries;
-import com.task.redditclient.model.json.ResponseToken;
 
 import java.io.File;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Locale;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * Engine to handle back end api.
@@ -33,9 +41,22 @@ public class Engine {
     public enum Action {
         GET_TOKEN,
         GET_ENTRIES,
+        PREFETCH_FEED,
         DOWNLOAD_IMAGE
     }
 
+    /**
+     * Request priority classes. Queued requests with higher priority are started first.
+     */
+    public enum Priority {
+        /** Requests for content which user is waiting for. */
+        FEED,
+        /** Requests for content which may be needed soon. */
+        PREFETCH,
+        /** File downloads. */
+        DOWNLOAD
+    }
+
     /**
      * Interface to receive engine events.
      */
@@ -69,31 +90,73 @@ public class Engine {
     /** Authenticated Reddit endpoint */
     private static final String URL_OAUTH = "https://oauth.reddit.com";
 
-    /** URL suffix for "Get token" request */
-    private static final String GET_TOKEN   = "/api/v1/access_token";
-    /** URL suffix for "Get entries" request */
-    private static final String GET_ENTRIES = "/top";
+    /** Scheme prefix of thumbnail URLs, other values are placeholders like "self" or "default". */
+    private static final String THUMBNAIL_SCHEME = "http";
 
-    /** Body of "Get Token" request */
-    private static final String GET_TOKEN_BODY = "grant_type=https://oauth.reddit.com/grants/installed_client&device_id=%s";
+    /** Max number of concurrently executed requests. */
+    private static final int POOL_SIZE = 4;
+    /** Max number of listings of the merged feed fetched concurrently. */
+    private static final int MAX_PARALLEL_SOURCES = 3;
 
-    /** Time URL parameter. */
-    private static final String PARAM_TIME = "t";
-    /** Limit URL parameter. The maximum number of items desired (default: 25, maximum: 100) */
-    private static final String PARAM_LIMIT = "limit";
-    /** After URL parameter. */
-    private static final String PARAM_AFTER = "after";
+    /** Name of preferences file to persist authentication data. */
+    private static final String PREFS_NAME = "engine";
+    //! Preference keys.
+    private static final String PREF_DEVICE_ID    = "deviceId";
+    private static final String PREF_TOKEN        = "token";
+    private static final String PREF_TOKEN_EXPIRY = "tokenExpiry";
+    private static final String PREF_TOKEN_REFRESH = "tokenRefresh";
+
+    /** Message of the page dropped because stored entries are replaced by another request. */
+    private static final String FEED_REPLACED = "Entries are replaced after the page was requested";
+
+    /** Min delay of scheduled token refresh, in milliseconds. */
+    private static final long MIN_TOKEN_REFRESH_DELAY = 30 * 1000;
 
     /** Listeners to receive callbacks. */
     private HashSet<Listener> mListeners;
-    /** Map to store started requests */
-    private HashMap<Action, RequestTask> mRequests;
-    /** JSON parser. */
-    private Gson mGson;
-    /** Device ID for current session */
-    private String mDeviceId;
-    /** Reddit access token */
-    private String mToken;
+    /** Map to store started requests. Accessed in the main thread only. */
+    private HashMap<Action, List<RequestTask>> mRequests;
+    /** Executor of background requests. */
+    private RequestExecutor mExecutor;
+    /** Executor of listing requests of the merged feed. */
+    private RequestExecutor mSourceExecutor;
+    /** Feed merged from several listings, null to display the default listing. */
+    private volatile MergedFeed mMergedFeed;
+    /** Handler to deliver request results in the main thread. */
+    private Handler mMainHandler;
+    /** Preferences to persist authentication data. */
+    private SharedPreferences mPrefs;
+    /** Client of back end api, it keeps access token. */
+    private ApiClient mApi;
+
+    /** Runnable to refresh token in advance. */
+    private final Runnable mRefreshTokenRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!isActionExecuted(Action.GET_TOKEN)) {
+                startRequest(Action.GET_TOKEN, Priority.PREFETCH);
+            }
+        }
+    };
+
+    /** Listener to persist received token and refresh it in advance. */
+    private final ApiClient.TokenListener mTokenListener = new ApiClient.TokenListener() {
+        @Override
+        public void onTokenReceived(String token, long expiry, long refreshTime) {
+            mPrefs.edit()
+                    .putString(PREF_TOKEN, token)
+                    .putLong(PREF_TOKEN_EXPIRY, expiry)
+                    .putLong(PREF_TOKEN_REFRESH, refreshTime)
+                    .apply();
+            scheduleTokenRefresh(refreshTime);
+        }
+    };
+
+    /** Policy to choose number of entries per request. */
+    private final PageSizePolicy mPageSizePolicy = new PageSizePolicy();
+
+    /** Metrics of executed requests. */
+    private final NetMetrics mMetrics = new NetMetrics();
 
     /**
      * Constructor.
@@ -101,8 +164,25 @@ public class Engine {
     public Engine() {
         mListeners = new HashSet<>();
         mRequests  = new HashMap<>();
-        mGson      = new GsonBuilder().create();
-        mDeviceId  = UUID.randomUUID().toString();
+        mExecutor  = new RequestExecutor(POOL_SIZE);
+        mSourceExecutor = new RequestExecutor(MAX_PARALLEL_SOURCES);
+        mMainHandler = new Handler(Looper.getMainLooper());
+
+        mPrefs = App.getInstance().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String deviceId = mPrefs.getString(PREF_DEVICE_ID, null);
+        if (null == deviceId) {
+            deviceId = UUID.randomUUID().toString();
+            mPrefs.edit().putString(PREF_DEVICE_ID, deviceId).apply();
+        }
+        final String credentials = CLIENT_ID + ":" + CLIENT_SECRET;
+        final String basicAuth = "Basic " + Base64.encodeToString(credentials.getBytes(), Base64.NO_WRAP);
+        mApi = new ApiClient(URL_BASE, URL_OAUTH, USER_AGENT, basicAuth, deviceId, mPageSizePolicy, mTokenListener);
+
+        String token = mPrefs.getString(PREF_TOKEN, null);
+        mApi.setToken(token, mPrefs.getLong(PREF_TOKEN_EXPIRY, 0), mPrefs.getLong(PREF_TOKEN_REFRESH, 0));
+        if (null != token) {
+            scheduleTokenRefresh(mPrefs.getLong(PREF_TOKEN_REFRESH, 0));
+        }
     }
 
     /**
@@ -126,7 +206,7 @@ public class Engine {
      * @return true if client is authenticated, otherwise false.
      */
     public boolean isAuthenticated() {
-        return null != mToken;
+        return mApi.isAuthenticated();
     }
 
     /**
@@ -135,27 +215,119 @@ public class Engine {
      * @return true if action is executed, otherwise - false.
      */
     public boolean isActionExecuted(Action action) {
-        return mRequests.containsKey(action);
+        List<RequestTask> requests = mRequests.get(action);
+        return (null != requests && !requests.isEmpty());
+    }
+
+    /**
+     * Gets response disk cache, e.g. to check its hit and miss counters.
+     * @return cache or null if caching is disabled.
+     */
+    public DiskCache getCache() {
+        return NetManager.getCache();
+    }
+
+    /**
+     * Gets metrics of executed requests.
+     * @return request metrics.
+     */
+    public NetMetrics getMetrics() {
+        return mMetrics;
     }
 
     /**
      * Starts "Get token" request.
+     * Token is persisted and refreshed in the background before it expires,
+     * request completes immediately if the current token is still valid.
      * Callback data format: No data received.
+     * @return handle to cancel request.
      */
-    public void getToken() {
-        startRequest(Action.GET_TOKEN);
+    public RequestHandle getToken() {
+        return startRequest(Action.GET_TOKEN, Priority.FEED);
+    }
+
+    /**
+     * Opens connection to the authenticated endpoint in the background,
+     * so the first "Get entries" request does not wait for TCP and TLS handshakes.
+     * It runs in parallel with other requests and has no callbacks.
+     */
+    public void preconnect() {
+        mExecutor.execute(new RequestExecutor.Task(Priority.FEED) {
+            @Override
+            public void run() {
+                try {
+                    NetManager.preconnect(URL_OAUTH);
+                } catch (Exception e) {
+                    Log.w("Engine", "Pre-connect failed", e);
+                }
+            }
+        });
     }
 
     /**
      * Starts "Get entries" request.
+     * For the first page callback may be called twice: with cached entries and then with revalidated ones.
      * @param after Entry ID to get the next page.
      *              if null request will fetch the first page.
      * Callback data format:
      *     {@link ArrayList<Entry>} data[0] - Array of received entries.
      *     {@link String} data[1] - after value to request the next page.
+     * @return handle to cancel request.
+     */
+    public RequestHandle getEntries(String after) {
+        return getEntries(after, Priority.FEED);
+    }
+
+    /**
+     * Starts "Get entries" request with given priority.
+     * @param after Entry ID to get the next page.
+     *              if null request will fetch the first page.
+     * @param priority Request priority.
+     * @return handle to cancel request.
+     * @see #getEntries(String)
      */
-    public void getEntries(String after) {
-        startRequest(Action.GET_ENTRIES, after);
+    public RequestHandle getEntries(String after, Priority priority) {
+        return startRequest(Action.GET_ENTRIES, priority, after);
+    }
+
+    /**
+     * Sets listings to build the feed from. Entries of several listings are merged in the given order,
+     * listings are fetched concurrently and paged independently. Should be called in the main thread,
+     * running "Get entries" request is cancelled and the first page should be requested again.
+     * @param sources Listings, null or empty list to display the default listing.
+     * @param order Merge order, listings are expected to be sorted in this order.
+     */
+    public void setFeedSources(List<FeedSource> sources, MergeOrder order) {
+        List<RequestTask> requests = mRequests.get(Action.GET_ENTRIES);
+        if (null != requests) {
+            for (RequestTask request : requests) {
+                request.cancel();
+            }
+            requests.clear();
+        }
+        mMergedFeed = (null == sources || sources.isEmpty() ? null : new MergedFeed(sources, order));
+    }
+
+    /**
+     * Starts background prefetch of the first page of entries into the disk cache,
+     * so it is displayed immediately when the application is opened.
+     * Entries are not added to the shared storage, the cached page is served by {@link #getEntries(String)}.
+     * Network is not used while the cached page is fresh.
+     * @param withThumbnails true to load thumbnails of prefetched entries into Glide disk cache.
+     * Callback data format:
+     *     {@link Integer} data[0] - Number of prefetched entries.
+     * @return handle to cancel request.
+     */
+    public RequestHandle prefetchFeed(boolean withThumbnails) {
+        return startRequest(Action.PREFETCH_FEED, Priority.PREFETCH, withThumbnails);
+    }
+
+    /**
+     * Updates current scroll rate of the entry list to adapt page size.
+     * @param entriesPerSecond Scroll rate in entries per second.
+     */
+    public void setScrollRate(float entriesPerSecond) {
+        mPageSizePolicy.setScrollRate(entriesPerSecond);
     }
 
     /**
@@ -164,70 +336,276 @@ public class Engine {
      * @param folder Destination folder to save file.
      * Callback data format:
      *     {@link String} data[0] - Full local path of downloaded image.
+     * @return handle to cancel request.
      */
-    public void downloadImage(String imageUrl, String folder) {
-        startRequest(Action.DOWNLOAD_IMAGE, imageUrl, folder);
+    public RequestHandle downloadImage(String imageUrl, String folder) {
+        return startRequest(Action.DOWNLOAD_IMAGE, Priority.DOWNLOAD, imageUrl, folder);
     }
 
     /**
      * Starts request to the back end server.
+     * If the same request with the same parameters is executed already, it is joined instead,
+     * its result is delivered to all listeners and its priority is raised if needed.
      * @param action Identifier of action to be executed. Refer {@link Engine.Action}
+     * @param priority Request priority.
      * @param params request parameters.
+     * @return handle to cancel request.
      */
-    private void startRequest(Action action, Object... params) {
-        RequestTask request = mRequests.get(action);
-        if (null != request) {
-            // Cancel previous request with the same action.
-            request.cancel(true);
-            mRequests.remove(action);
+    private RequestHandle startRequest(Action action, Priority priority, Object... params) {
+        RequestData data = new RequestData(action, params);
+        List<RequestTask> requests = mRequests.get(action);
+        if (null == requests) {
+            requests = new ArrayList<>();
+            mRequests.put(action, requests);
+        } else {
+            for (RequestTask request : requests) {
+                if (request.mData.isSameRequest(data)) {
+                    mExecutor.promote(request, priority);
+                    return request.newHandle();
+                }
+            }
+            if (isExclusive(action)) {
+                // Cancel previous requests superseded by the new one.
+                for (RequestTask request : requests) {
+                    request.cancel();
+                }
+                requests.clear();
+            }
         }
-        request = new RequestTask();
-        request.execute(new RequestData(action, params));
-        mRequests.put(action, request);
+        RequestTask request = new RequestTask(data, priority);
+        requests.add(request);
+        mExecutor.execute(request);
+        return request.newHandle();
     }
 
     /**
-     * Executes get token request.
-     * @throws Exception if request is failed.
+     * Informs either a new request with different parameters cancels previous requests with the same action.
+     * Requests which update shared state are exclusive, downloads are executed concurrently.
+     * @param action Action to check.
+     * @return true if action is exclusive, otherwise - false.
      */
-    private void executeGetToken() throws Exception {
-        final String credentials = CLIENT_ID + ":" + CLIENT_SECRET;
-        final String basicAuth = "Basic " + Base64.encodeToString(credentials.getBytes(), Base64.NO_WRAP);
-
-        ArrayList<KeyValue> header = new ArrayList<>(2);
-        header.add(new KeyValue(NetManager.KEY_AUTHORIZATION, basicAuth));
-        header.add(new KeyValue(NetManager.KEY_ACCEPT, NetManager.VAL_APPLICATION_JSON));
+    private static boolean isExclusive(Action action) {
+        return Action.DOWNLOAD_IMAGE != action;
+    }
 
-        String respStr = NetManager.post((URL_BASE + GET_TOKEN), header, String.format(Locale.getDefault(), GET_TOKEN_BODY, mDeviceId));
-        ResponseToken token = mGson.fromJson(respStr, ResponseToken.class);
-        mToken = token.access_token;
+    /**
+     * Schedules token refresh in the main thread before token expires.
+     * Refresh is not scheduled sooner than {@link #MIN_TOKEN_REFRESH_DELAY}, so failed refresh is not repeated in a loop.
+     * @param refreshTime Time to refresh token in milliseconds.
+     */
+    private void scheduleTokenRefresh(long refreshTime) {
+        long delay = Math.max(MIN_TOKEN_REFRESH_DELAY, refreshTime - System.currentTimeMillis());
+        mMainHandler.removeCallbacks(mRefreshTokenRunnable);
+        mMainHandler.postDelayed(mRefreshTokenRunnable, delay);
     }
 
     /**
      * Executes "get entries" request.
+     * When there are no entries yet, the feed stored by the previous process is restored,
+     * it is served while it is fresh, otherwise it is delivered as intermediate result.
+     * The first page is served from the disk cache while it is fresh.
+     * Stale cached first page is delivered as intermediate result and then revalidated.
+     * @param task Task executing request to deliver intermediate result.
      * @param after Entry ID to get the next page.
      *              if null request will fetch the first page.
      * @return array with received entry list and "after" value.
      * @throws Exception if request is failed.
      */
-    private Object[] executeGetEntries(String after) throws Exception {
-        ArrayList<KeyValue> header = new ArrayList<>(3);
-        header.add(new KeyValue(NetManager.KEY_AUTHORIZATION, "bearer " + mToken));
-        header.add(new KeyValue(NetManager.KEY_USER_AGENT, USER_AGENT));
-        header.add(new KeyValue(NetManager.KEY_ACCEPT, NetManager.VAL_APPLICATION_JSON));
-
-        ArrayList<KeyValue> urlParams = new ArrayList<>(3);
-        urlParams.add(new KeyValue(PARAM_TIME, Common.VALUE_TIME));
-        urlParams.add(new KeyValue(PARAM_LIMIT, String.valueOf(Common.ENTRY_NUM)));
-        if (null != after) {
-            urlParams.add(new KeyValue(PARAM_AFTER, after));
+    private Object[] executeGetEntries(RequestTask task, String after) throws Exception {
+        MergedFeed mergedFeed = mMergedFeed;
+        if (null != mergedFeed) {
+            return executeGetMergedEntries(task, mergedFeed, after);
+        }
+
+        List<KeyValue> urlParams = entriesParams(after);
+        String url = mApi.getListingUrl(ApiClient.DEFAULT_SOURCE);
+        if (null == after) {
+            Storage storage = App.getStorage();
+            long restoredAge = storage.restoreEntries(ApiClient.DEFAULT_SOURCE, ApiClient.CACHE_MAX_STALE_ENTRIES);
+            if (restoredAge >= 0 && restoredAge <= ApiClient.CACHE_TTL_ENTRIES) {
+                return new Object[]{storage.getEntries(), storage.getAfter()};
+            }
+
+            NetManager.CachedResponse<ResponseGetEntries> cached = mApi.getCachedEntries(ApiClient.DEFAULT_SOURCE, urlParams);
+            // Stale cached first page does not replace more pages of the restored feed.
+            if (null != cached && (cached.isFresh || restoredAge < 0)) {
+                CancellationToken.throwIfCancelled();
+                Object[] result = storeEntries(cached.response, null);
+                if (cached.isFresh) {
+                    return result;
+                }
+                task.publishResult(result);
+            } else if (restoredAge >= 0) {
+                task.publishResult(new Object[]{storage.getEntries(), storage.getAfter()});
+            }
+        }
+
+        ResponseGetEntries response = mApi.requestEntries(url, urlParams, (null == after));
+        // Cancelled request must not replace entries stored by the request superseding it,
+        // storage drops the next page itself if entries are replaced after this check.
+        CancellationToken.throwIfCancelled();
+        return storeEntries(response, after);
+    }
+
+    /**
+     * Executes "get entries" request of the merged feed.
+     * Pages of listings are requested concurrently, merged entries are delivered
+     * as intermediate result when each listing page is received.
+     * @param task Task executing request to deliver intermediate result.
+     * @param feed Merged feed.
+     * @param after Feed cursor to get the next page, null to fetch the first page.
+     * @return array with merged entry list and feed cursor.
+     * @throws Exception if requests of all listings are failed.
+     */
+    private Object[] executeGetMergedEntries(RequestTask task, MergedFeed feed, String after) throws Exception {
+        MergedFeed.State state = feed.begin(null == after);
+        List<Integer> sources = state.getActiveSources();
+        // Page size is shared by listings.
+        int limit = Math.max(1, (getPageSize(after) + sources.size() - 1) / Math.max(1, sources.size()));
+
+        mApi.ensureToken();
+        LinkedBlockingQueue<SourceTask> completed = new LinkedBlockingQueue<>();
+        for (int source : sources) {
+            String sourceAfter = state.getAfter(source);
+            mSourceExecutor.execute(new SourceTask(task, source, mApi.getListingUrl(feed.getSource(source)),
+                    ApiClient.sourceParams(feed.getSource(source), limit, sourceAfter), (null == sourceAfter), completed));
         }
 
-        String respStr = NetManager.get((URL_OAUTH + GET_ENTRIES), header, urlParams);
-        ResponseGetEntries response = mGson.fromJson(respStr, ResponseGetEntries.class);
+        Exception error = null;
+        int received = 0;
+        for (int i = 0; i < sources.size(); ++i) {
+            SourceTask sourceTask = completed.take();
+            if (null != sourceTask.mException) {
+                // Failed listing is requested again with the next page, unless it fails too many times.
+                error = (null == error ? sourceTask.mException : error);
+                FeedSource source = feed.getSource(sourceTask.mSource);
+                if (state.fail(sourceTask.mSource)) {
+                    Log.w("Engine", "Listing " + source + " is skipped after repeated failures", sourceTask.mException);
+                } else {
+                    Log.w("Engine", "Listing " + source + " request failed", sourceTask.mException);
+                }
+                continue;
+            }
+            ResponseData data = sourceTask.mResponse.data;
+            state.add(sourceTask.mSource, data.children, data.after);
+            ++received;
+            if (i + 1 < sources.size()) {
+                CancellationToken.throwIfCancelled();
+                task.publishResult(storeMergedEntries(feed, state, after, after));
+            }
+        }
+        if (0 == received && null != error) {
+            throw error;
+        }
 
+        state.commitReady();
+        // Cancelled request must not replace entries stored by the request superseding it.
+        CancellationToken.throwIfCancelled();
+        Object[] result = storeMergedEntries(feed, state, state.getCursor(), after);
+        // The feed is committed only when its entries are stored.
+        feed.commit(state);
+        return result;
+    }
+
+    /**
+     * Replaces not committed entries of the merged feed in the shared storage.
+     * @param feed Merged feed.
+     * @param state Merged feed state.
+     * @param after Feed cursor to get the next page.
+     * @param requestedAfter Feed cursor the page was requested with, null for the first page.
+     * @return array with merged entry list and feed cursor.
+     * @throws InterruptedIOException if stored entries are replaced after the page was requested.
+     */
+    private Object[] storeMergedEntries(MergedFeed feed, MergedFeed.State state, String after,
+            String requestedAfter) throws InterruptedIOException {
+        ArrayList<Entry> entries = state.getTail();
+        if (!App.getStorage().replaceEntries(feed.getKey(), state.getCommittedCount(), entries, after, requestedAfter)) {
+            throw new InterruptedIOException(FEED_REPLACED);
+        }
+        return new Object[]{entries, after};
+    }
+
+    /**
+     * Executes "prefetch feed" request.
+     * The first page is requested with the same parameters as by {@link #executeGetEntries(RequestTask, String)},
+     * so it is stored in the disk cache under the same key.
+     * @param withThumbnails true to load thumbnails of prefetched entries.
+     * @return number of prefetched entries in the first array item.
+     * @throws Exception if request is failed.
+     */
+    private Object[] executePrefetchFeed(boolean withThumbnails) throws Exception {
+        ResponseGetEntries response = mApi.getEntries(ApiClient.DEFAULT_SOURCE, entriesParams(null), true);
+
+        Entry[] children = (null != response.data.children ? response.data.children : new Entry[0]);
+        if (withThumbnails) {
+            prefetchThumbnails(children);
+        }
+        return new Object[]{children.length};
+    }
+
+    /**
+     * Loads thumbnails into Glide disk cache, so they are displayed without network access.
+     * Original image data is cached, it is decoded at the displayed size when the list is shown.
+     * @param entries Entries to load thumbnails of.
+     * @throws Exception if request is cancelled.
+     */
+    private void prefetchThumbnails(Entry[] entries) throws Exception {
+        RequestManager glide = Glide.with(App.getInstance());
+        ArrayList<FutureTarget<File>> targets = new ArrayList<>(entries.length);
+        try {
+            // Loads are started together and executed by Glide thread pool.
+            for (Entry entry : entries) {
+                String thumbnail = (null != entry.data ? entry.data.thumbnail : null);
+                if (null != thumbnail && thumbnail.startsWith(THUMBNAIL_SCHEME)) {
+                    targets.add(glide.downloadOnly().load(thumbnail).submit());
+                }
+            }
+            for (FutureTarget<File> target : targets) {
+                CancellationToken.throwIfCancelled();
+                try {
+                    target.get();
+                } catch (ExecutionException e) {
+                    // Missing thumbnail is loaded again when it is displayed.
+                    Log.w("Engine", "Thumbnail prefetch failed", e);
+                }
+            }
+        } finally {
+            for (FutureTarget<File> target : targets) {
+                glide.clear(target);
+            }
+        }
+    }
+
+    /**
+     * Builds "get entries" request parameters of the default listing.
+     * @param after Entry ID to get the next page, null for the first page.
+     * @return list of URL parameters.
+     */
+    private List<KeyValue> entriesParams(String after) {
+        return ApiClient.sourceParams(ApiClient.DEFAULT_SOURCE, getPageSize(after), after);
+    }
+
+    /**
+     * Gets number of entries to request.
+     * @param after Entry ID to get the next page, null for the first page.
+     * @return page size.
+     */
+    private int getPageSize(String after) {
+        return mPageSizePolicy.getPageSize(null == after);
+    }
+
+    /**
+     * Adds received entries to the shared storage.
+     * @param response Received response.
+     * @param after Entry ID used to request this page, null for the first page.
+     * @return array with received entry list and "after" value.
+     * @throws InterruptedIOException if stored entries are replaced after the page was requested.
+     */
+    private Object[] storeEntries(ResponseGetEntries response, String after) throws InterruptedIOException {
         ArrayList<Entry> entries = new ArrayList<>(Arrays.asList(response.data.children));
-        App.getStorage().addEntries(entries, response.data.after, null == after);
+        if (!App.getStorage().addEntries(ApiClient.DEFAULT_SOURCE, entries, response.data.after, after)) {
+            throw new InterruptedIOException(FEED_REPLACED);
+        }
 
         return new Object[]{entries, response.data.after};
     }
@@ -240,7 +618,11 @@ public class Engine {
      * @throws Exception if request is failed.
      */
     private String[] executeDownloadImage(String imageUrl, String folder) throws Exception {
-        String fileName = NetManager.download(imageUrl, folder);
+        // Displayed images are in Glide disk cache already, network is used only on cache miss.
+        String fileName = saveCachedImage(imageUrl, folder);
+        if (null == fileName) {
+            fileName = NetManager.download(imageUrl, folder);
+        }
 
         // Add downloaded image to the Media Provider's database
         Intent mediaScanIntent = new Intent(Intent.ACTION_MEDIA_SCANNER_SCAN_FILE);
@@ -252,31 +634,177 @@ public class Engine {
     }
 
     /**
-     * Asynchronous task to execute request in the background
+     * Saves original image bytes from Glide disk cache without network access.
+     * @param imageUrl remote image URL.
+     * @param folder Destination folder to save file.
+     * @return Local image path or null if image is not cached.
+     * @throws Exception if cached image can't be saved.
+     */
+    private String saveCachedImage(String imageUrl, String folder) throws Exception {
+        RequestManager glide = Glide.with(App.getInstance());
+        FutureTarget<File> target = glide.downloadOnly()
+                .load(imageUrl)
+                .apply(new RequestOptions().onlyRetrieveFromCache(true))
+                .submit();
+        try {
+            File cachedFile;
+            try {
+                cachedFile = target.get();
+            } catch (ExecutionException e) {
+                // Not cached.
+                return null;
+            }
+            // Cache entry is held by the target until it is copied.
+            return NetManager.saveFile(cachedFile, imageUrl, folder);
+        } finally {
+            glide.clear(target);
+        }
+    }
+
+    /**
+     * Task to request a page of a merged feed listing.
+     * It is executed on behalf of "get entries" task, so it shares its cancellation and metrics.
+     */
+    private class SourceTask extends RequestExecutor.Task {
+        /** Task of "get entries" request. */
+        private final RequestTask mTask;
+        /** Listing index. */
+        private final int mSource;
+        /** Listing URL. */
+        private final String mUrl;
+        /** Request parameters. */
+        private final List<KeyValue> mUrlParams;
+        /** Flag shows either the first page is requested, it is stored in the disk cache. */
+        private final boolean mFirstPage;
+        /** Queue to pass completed task to the "get entries" task. */
+        private final LinkedBlockingQueue<SourceTask> mCompleted;
+        /** Metrics of "get entries" request. */
+        private final RequestMetrics mMetrics = RequestMetrics.current();
+        //! Request result.
+        private ResponseGetEntries mResponse;
+        private Exception mException;
+
+        /**
+         * Constructor.
+         * @param task Task of "get entries" request.
+         * @param source Listing index.
+         * @param url Listing URL.
+         * @param urlParams Request parameters.
+         * @param firstPage true if the first page is requested.
+         * @param completed Queue to pass completed task to the "get entries" task.
+         */
+        SourceTask(RequestTask task, int source, String url, List<KeyValue> urlParams, boolean firstPage,
+                LinkedBlockingQueue<SourceTask> completed) {
+            super(task.getPriority());
+            mTask = task;
+            mSource = source;
+            mUrl = url;
+            mUrlParams = urlParams;
+            mFirstPage = firstPage;
+            mCompleted = completed;
+        }
+
+        /**
+         * @see Runnable#run()
+         */
+        @Override
+        public void run() {
+            RequestMetrics.bind(mMetrics);
+            mTask.mCancellation.bind();
+            try {
+                CancellationToken.throwIfCancelled();
+                mResponse = mApi.requestEntries(mUrl, mUrlParams, mFirstPage);
+            } catch (Exception e) {
+                mException = e;
+            } finally {
+                mTask.mCancellation.unbind();
+                RequestMetrics.bind(null);
+            }
+            mCompleted.add(this);
+        }
+    }
+
+    /**
+     * Task to execute request in the background
      * and return result in the main thread.
      */
-    private class RequestTask extends AsyncTask<RequestData, Void, Object[]> {
+    private class RequestTask extends RequestExecutor.Task {
         //! Request input data.
-        private RequestData mData;
+        private final RequestData mData;
         //! Request execution error.
         private Exception mException = null;
+        //! Flag shows either request is cancelled.
+        private volatile boolean mCancelled = false;
+        /** Cancellation state to abort network transfer of running request. */
+        private final CancellationToken mCancellation = new CancellationToken();
+        /** Number of not cancelled handles of joined callers. Accessed in the main thread only. */
+        private int mHandleCount = 0;
+
+        /**
+         * Constructor.
+         * @param data Request input data.
+         * @param priority Request priority.
+         */
+        RequestTask(RequestData data, Priority priority) {
+            super(priority);
+            mData = data;
+        }
 
         /**
-         * @see AsyncTask#doInBackground(Object...)
+         * Cancels request. Should be called in the main thread.
+         * Callbacks of cancelled request are not called, running transfer is aborted.
+         */
+        void cancel() {
+            mCancelled = true;
+            mExecutor.remove(this);
+            mCancellation.cancel();
+        }
+
+        /**
+         * Creates handle for a caller of this request. Should be called in the main thread.
+         * @return request handle.
+         */
+        RequestHandle newHandle() {
+            ++mHandleCount;
+            return new RequestHandle(this);
+        }
+
+        /**
+         * Releases caller handle, request is cancelled when all its callers cancel it.
+         * Should be called in the main thread.
+         */
+        void releaseHandle() {
+            if (0 == --mHandleCount) {
+                List<RequestTask> requests = mRequests.get(mData.action);
+                if (null != requests && requests.remove(this)) {
+                    cancel();
+                }
+            }
+        }
+
+        /**
+         * @see Runnable#run()
          */
         @Override
-        protected Object[] doInBackground(RequestData... requestData) {
-            mData = requestData[0];
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
 
             Object[] result = null;
+            RequestMetrics metrics = RequestMetrics.begin();
+            mCancellation.bind();
             // Execute HTTP request
             try {
                 switch(mData.action) {
                 case GET_TOKEN:
-                    executeGetToken();
+                    mApi.ensureToken();
                     break;
                 case GET_ENTRIES:
-                    result = executeGetEntries((String)mData.values[0]);
+                    result = executeGetEntries(this, (String)mData.values[0]);
+                    break;
+                case PREFETCH_FEED:
+                    result = executePrefetchFeed((Boolean)mData.values[0]);
                     break;
                 case DOWNLOAD_IMAGE:
                     result = executeDownloadImage((String)mData.values[0], (String)mData.values[1]);
@@ -285,32 +813,107 @@ public class Engine {
                     break;
                 }
             } catch (Exception e) {
-                Log.e("Engine", "Request failed", e);
+                if (!mCancelled) {
+                    Log.e("Engine", "Request failed", e);
+                }
                 mException = e;
+            } finally {
+                mCancellation.unbind();
+            }
+            metrics.end(null != mException);
+            if (mCancelled) {
+                // Aborted requests are not representative.
+                return;
             }
+            mMetrics.record(mData.action, metrics);
 
-            return result;
+            final Object[] finalResult = result;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onPostExecute(finalResult);
+                }
+            });
+        }
+
+        /**
+         * Delivers intermediate result to listeners while request is still executed.
+         * @param result Intermediate result.
+         */
+        void publishResult(final Object[] result) {
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCancelled && null != mListeners) {
+                        for (Listener listener : new ArrayList<>(mListeners)) {
+                            listener.onRequestCompleted(mData.action, result);
+                        }
+                    }
+                }
+            });
         }
 
         /**
-         * @see AsyncTask#onPostExecute(Object)
+         * Notifies listeners about request result in the main thread.
+         * @param result Request result.
          */
-        protected void onPostExecute(Object[] result) {
-            if (!isCancelled()) {
+        private void onPostExecute(Object[] result) {
+            if (!mCancelled) {
+                List<RequestTask> requests = mRequests.get(mData.action);
+                if (null != requests) {
+                    requests.remove(this);
+                }
+
                 if (null != mListeners) {
-                    Iterator iterator = mListeners.iterator();
+                    Iterator<Listener> iterator = new ArrayList<>(mListeners).iterator();
                     while (iterator.hasNext()) {
                         if (null == mException) {
-                            ((Listener)iterator.next()).onRequestCompleted(mData.action, result);
+                            iterator.next().onRequestCompleted(mData.action, result);
                         } else {
-                            ((Listener)iterator.next()).onRequestFailed(mData.action, mException);
+                            iterator.next().onRequestFailed(mData.action, mException);
                         }
                     }
                 }
+            }
+        }
+    }
 
-                mRequests.remove(mData.action);
+    /**
+     * Handle of started request.
+     * Request is joined by callers of identical requests, it is cancelled when all of them cancel it.
+     */
+    public class RequestHandle {
+        /** Task executing request. */
+        private final RequestTask mTask;
+        /** Flag shows either this handle is cancelled. */
+        private boolean mCancelled = false;
+
+        /**
+         * Constructor.
+         * @param task Task executing request.
+         */
+        private RequestHandle(RequestTask task) {
+            mTask = task;
+        }
+
+        /**
+         * Cancels request for this caller. Should be called in the main thread.
+         * When request is cancelled, its network transfer is aborted and callbacks are not called.
+         */
+        public void cancel() {
+            if (!mCancelled) {
+                mCancelled = true;
+                mTask.releaseHandle();
             }
         }
+
+        /**
+         * Informs either request is cancelled by this handle.
+         * @return true if handle is cancelled.
+         */
+        public boolean isCancelled() {
+            return mCancelled;
+        }
     }
 
     /**
@@ -331,5 +934,14 @@ public class Engine {
             action = actionId;
             values = params;
         }
+
+        /**
+         * Informs either other request has the same action and parameters.
+         * @param other Data of other request.
+         * @return true if requests are identical.
+         */
+        boolean isSameRequest(RequestData other) {
+            return action == other.action && Arrays.equals(values, other.values);
+        }
     }
 }
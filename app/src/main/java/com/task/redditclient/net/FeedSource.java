@@ -0,0 +1,52 @@
+package com.task.redditclient.net;
+
+/**
+ * Listing which entries of the feed are fetched from, e.g. top entries of a subreddit.
+ */
+public class FeedSource {
+    /** Listing path, e.g. "/top" or "/r/android/new". */
+    public final String path;
+    /** Time parameter value, one of (hour, day, week, month, year, all), null for listings without time period. */
+    public final String time;
+
+    /**
+     * Constructor.
+     * @param path Listing path, e.g. "/top" or "/r/android/new".
+     * @param time Time parameter value, null for listings without time period.
+     */
+    public FeedSource(String path, String time) {
+        this.path = path;
+        this.time = time;
+    }
+
+    /**
+     * @see Object#equals(Object)
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof FeedSource)) {
+            return false;
+        }
+        FeedSource source = (FeedSource)other;
+        return path.equals(source.path) && (null == time ? null == source.time : time.equals(source.time));
+    }
+
+    /**
+     * @see Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        return 31 * path.hashCode() + (null == time ? 0 : time.hashCode());
+    }
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString() {
+        return (null == time ? path : path + "?t=" + time);
+    }
+}
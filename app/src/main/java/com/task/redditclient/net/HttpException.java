@@ -0,0 +1,30 @@
+package com.task.redditclient.net;
+
+/**
+ * Exception thrown when server responds with unexpected HTTP status code.
+ */
+public class HttpException extends Exception {
+    /** Serialization version. */
+    private static final long serialVersionUID = 1L;
+
+    /** HTTP status code of the response. */
+    private final int mStatusCode;
+
+    /**
+     * Constructor.
+     * @param statusCode HTTP status code of the response.
+     * @param body Response body.
+     */
+    HttpException(int statusCode, String body) {
+        super("Request failed with status code " + String.valueOf(statusCode) + ", body: " + body);
+        mStatusCode = statusCode;
+    }
+
+    /**
+     * Gets HTTP status code of the response.
+     * @return status code.
+     */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+}
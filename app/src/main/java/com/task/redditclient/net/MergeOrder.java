@@ -0,0 +1,11 @@
+package com.task.redditclient.net;
+
+/**
+ * Order of entries in the feed merged from several listings.
+ */
+public enum MergeOrder {
+    /** The highest score first, e.g. to merge "top" listings. */
+    SCORE,
+    /** The newest first, e.g. to merge "new" listings. */
+    TIME
+}
@@ -0,0 +1,335 @@
+package com.task.redditclient.net;
+
+import com.task.redditclient.model.json.Entry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Feed merged from several listings.
+ * Each listing is paged with its own "after" cursor. Fetched entries are buffered per listing
+ * and merged by k-way merge: an entry is committed to the feed when no entry fetched later
+ * from any listing can precede it, i.e. it is not after the last fetched entry of each listing.
+ * Listings are expected to be sorted in the merge order. Buffered entries are displayed
+ * after the committed ones and may be reordered when more entries are fetched.
+ * Every page is fetched on a copy of the feed state, which replaces the current state
+ * when the page is complete, so a cancelled page does not change the feed.
+ * A listing which requests fail several times in a row is skipped, so it does not block committing.
+ * Only names of buffered and recently committed entries are kept to skip duplicates, so the state
+ * copied for each page does not grow with the feed.
+ */
+class MergedFeed {
+    /** Divider of listing cursors in the feed cursor. */
+    private static final char CURSOR_DIVIDER = ',';
+    /** Divider of listings in the feed key. */
+    private static final char KEY_DIVIDER = '|';
+    /** Number of failed requests of a listing in a row after which it is skipped. */
+    static final int MAX_SOURCE_FAILURES = 3;
+    /**
+     * Number of the last committed entries whose names are kept to skip duplicates.
+     * Listings are sorted, so duplicates of an entry are fetched close to it.
+     */
+    static final int MAX_COMMITTED_NAMES = 500;
+
+    /** Merged listings. */
+    private final FeedSource[] mSources;
+    /** Key of the merged feed to store its entries like entries of a listing. */
+    private final FeedSource mKey;
+    /** Merge order. */
+    private final Comparator<Entry> mComparator;
+    /** State after the last complete page. Guarded by this. */
+    private State mState;
+
+    /**
+     * Constructor.
+     * @param sources Merged listings.
+     * @param order Merge order.
+     */
+    MergedFeed(List<FeedSource> sources, MergeOrder order) {
+        mSources = sources.toArray(new FeedSource[sources.size()]);
+        mComparator = (MergeOrder.TIME == order ? TIME_ORDER : SCORE_ORDER);
+        mState = new State();
+
+        StringBuilder path = new StringBuilder();
+        for (FeedSource source : mSources) {
+            if (path.length() > 0) {
+                path.append(KEY_DIVIDER);
+            }
+            path.append(source);
+        }
+        mKey = new FeedSource(path.toString(), order.name());
+    }
+
+    /**
+     * Gets key of the merged feed, which differs from keys of listings and other merged feeds.
+     * @return listing combined from merged listings and merge order.
+     */
+    FeedSource getKey() {
+        return mKey;
+    }
+
+    /**
+     * Gets merged listing.
+     * @param index Listing index.
+     * @return listing.
+     */
+    FeedSource getSource(int index) {
+        return mSources[index];
+    }
+
+    /**
+     * Starts fetching a page.
+     * @param reset true to fetch the first page, otherwise the next page is fetched.
+     * @return copy of the feed state to update with fetched entries.
+     */
+    synchronized State begin(boolean reset) {
+        return (reset ? new State() : new State(mState));
+    }
+
+    /**
+     * Finishes fetching a page.
+     * @param state Updated state.
+     */
+    synchronized void commit(State state) {
+        mState = state;
+    }
+
+    /**
+     * Merge order by score, the highest first.
+     */
+    private static final Comparator<Entry> SCORE_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry left, Entry right) {
+            int diff = compareDescending(left.data.score, right.data.score);
+            return (0 != diff ? diff : compareDescending(left.data.created_utc, right.data.created_utc));
+        }
+    };
+
+    /**
+     * Merge order by creation time, the newest first.
+     */
+    private static final Comparator<Entry> TIME_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry left, Entry right) {
+            int diff = compareDescending(left.data.created_utc, right.data.created_utc);
+            return (0 != diff ? diff : compareDescending(left.data.score, right.data.score));
+        }
+    };
+
+    /**
+     * Compares values in descending order.
+     * @param left The first value.
+     * @param right The second value.
+     * @return negative number if the first value is greater, positive if it is less, 0 if they are equal.
+     */
+    private static int compareDescending(long left, long right) {
+        return (left > right ? -1 : (left < right ? 1 : 0));
+    }
+
+    /**
+     * Paging state of the merged feed.
+     */
+    class State {
+        /** Cursors of listings, null before the first page. */
+        private final String[] mAfter;
+        /** Flags show either listing has no more entries or is skipped. */
+        private final boolean[] mExhausted;
+        /** Number of failed requests of each listing in a row. */
+        private final int[] mFailures;
+        /** The last fetched entry of each listing, null before the first page. */
+        private final Entry[] mLast;
+        /** Fetched entries which are not committed yet, by listing. */
+        private final ArrayList<ArrayList<Entry>> mBuffers;
+        /** Names of buffered and recently committed entries to skip entries present in several listings. */
+        private final HashSet<String> mNames;
+        /** Names of recently committed entries, the oldest first. */
+        private final ArrayDeque<String> mCommittedNames;
+        /** Number of entries committed before this page. */
+        private final int mCommittedCount;
+        /** Entries committed on this page. */
+        private final ArrayList<Entry> mCommitted = new ArrayList<>();
+
+        /**
+         * Constructor of the initial state.
+         */
+        private State() {
+            mAfter = new String[mSources.length];
+            mExhausted = new boolean[mSources.length];
+            mFailures = new int[mSources.length];
+            mLast = new Entry[mSources.length];
+            mBuffers = new ArrayList<>(mSources.length);
+            for (int i = 0; i < mSources.length; ++i) {
+                mBuffers.add(new ArrayList<Entry>());
+            }
+            mNames = new HashSet<>();
+            mCommittedNames = new ArrayDeque<>();
+            mCommittedCount = 0;
+        }
+
+        /**
+         * Constructor of the state to fetch the next page.
+         * @param other Current state.
+         */
+        private State(State other) {
+            mAfter = other.mAfter.clone();
+            mExhausted = other.mExhausted.clone();
+            mFailures = other.mFailures.clone();
+            mLast = other.mLast.clone();
+            mBuffers = new ArrayList<>(mSources.length);
+            for (ArrayList<Entry> buffer : other.mBuffers) {
+                mBuffers.add(new ArrayList<>(buffer));
+            }
+            mNames = new HashSet<>(other.mNames);
+            mCommittedNames = new ArrayDeque<>(other.mCommittedNames);
+            mCommittedCount = other.mCommittedCount + other.mCommitted.size();
+        }
+
+        /**
+         * Gets listings to fetch the next page of.
+         * @return indexes of listings which are not exhausted.
+         */
+        List<Integer> getActiveSources() {
+            ArrayList<Integer> sources = new ArrayList<>(mSources.length);
+            for (int i = 0; i < mSources.length; ++i) {
+                if (!mExhausted[i]) {
+                    sources.add(i);
+                }
+            }
+            return sources;
+        }
+
+        /**
+         * Gets cursor of listing.
+         * @param source Listing index.
+         * @return "after" value or null to fetch the first page.
+         */
+        String getAfter(int source) {
+            return mAfter[source];
+        }
+
+        /**
+         * Adds fetched page of listing.
+         * @param source Listing index.
+         * @param entries Fetched entries.
+         * @param after "after" value to fetch the next page, null if there are no more entries.
+         */
+        void add(int source, Entry[] entries, String after) {
+            ArrayList<Entry> buffer = mBuffers.get(source);
+            if (null != entries) {
+                for (Entry entry : entries) {
+                    if (null != entry.data && mNames.add(entry.data.name)) {
+                        buffer.add(entry);
+                    }
+                }
+                if (entries.length > 0) {
+                    mLast[source] = entries[entries.length - 1];
+                }
+            }
+            Collections.sort(buffer, mComparator);
+            mAfter[source] = after;
+            mExhausted[source] = (null == after || null == entries || 0 == entries.length);
+            mFailures[source] = 0;
+        }
+
+        /**
+         * Registers failed request of listing page. The page is requested again with the next page,
+         * unless the listing fails {@link #MAX_SOURCE_FAILURES} times in a row. Then it is skipped,
+         * since entries can't be committed until its entries are fetched.
+         * @param source Listing index.
+         * @return true if listing is skipped.
+         */
+        boolean fail(int source) {
+            if (++mFailures[source] < MAX_SOURCE_FAILURES) {
+                return false;
+            }
+            mExhausted[source] = true;
+            return true;
+        }
+
+        /**
+         * Commits buffered entries which can't be preceded by entries of the next pages.
+         */
+        void commitReady() {
+            while (true) {
+                ArrayList<Entry> first = null;
+                for (ArrayList<Entry> buffer : mBuffers) {
+                    if (!buffer.isEmpty() && (null == first || mComparator.compare(buffer.get(0), first.get(0)) < 0)) {
+                        first = buffer;
+                    }
+                }
+                if (null == first || !canCommit(first.get(0))) {
+                    return;
+                }
+                Entry entry = first.remove(0);
+                mCommitted.add(entry);
+                if (null != entry.data.name) {
+                    mCommittedNames.addLast(entry.data.name);
+                    if (mCommittedNames.size() > MAX_COMMITTED_NAMES) {
+                        mNames.remove(mCommittedNames.removeFirst());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Informs either entry precedes all entries of the next pages.
+         * @param entry Entry to check.
+         * @return true if entry can be committed.
+         */
+        private boolean canCommit(Entry entry) {
+            for (int i = 0; i < mSources.length; ++i) {
+                if (!mExhausted[i] && (null == mLast[i] || mComparator.compare(entry, mLast[i]) > 0)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Gets number of entries committed before this page, they are not changed by this page.
+         * @return entry count.
+         */
+        int getCommittedCount() {
+            return mCommittedCount;
+        }
+
+        /**
+         * Gets entries to display after the ones committed before this page:
+         * entries committed on this page followed by merged buffered entries.
+         * @return list of entries.
+         */
+        ArrayList<Entry> getTail() {
+            ArrayList<Entry> tail = new ArrayList<>(mCommitted);
+            ArrayList<Entry> buffered = new ArrayList<>();
+            for (ArrayList<Entry> buffer : mBuffers) {
+                buffered.addAll(buffer);
+            }
+            Collections.sort(buffered, mComparator);
+            tail.addAll(buffered);
+            return tail;
+        }
+
+        /**
+         * Gets cursor of the feed to request the next page.
+         * @return cursor combined from listing cursors or null if all listings are exhausted.
+         */
+        String getCursor() {
+            StringBuilder builder = new StringBuilder();
+            boolean exhausted = true;
+            for (int i = 0; i < mSources.length; ++i) {
+                exhausted &= mExhausted[i];
+                if (i > 0) {
+                    builder.append(CURSOR_DIVIDER);
+                }
+                if (!mExhausted[i] && null != mAfter[i]) {
+                    builder.append(mAfter[i]);
+                }
+            }
+            return (exhausted ? null : builder.toString());
+        }
+    }
+}
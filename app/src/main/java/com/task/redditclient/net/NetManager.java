@@ -1,49 +1,201 @@
 package com.task.redditclient.net;
 
-import android.net.Uri;
-
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
 
 /**
  * Class to execute HTTP/HTTPS requests.
  * All requests are executed synchronously, therefore it 
  * should be used in background threads only.
+ * Connections are not disconnected after successful requests,
+ * so sockets and TLS sessions are kept alive and reused per host.
+ * Text responses are requested gzip compressed and are decompressed while they are read,
+ * their charset is taken from Content-Type.
  */
 @SuppressWarnings("WeakerAccess")
 public class NetManager {
     //! Standard HTTP field keys
     public static final String KEY_ACCEPT              = "Accept";
+    public static final String KEY_ACCEPT_ENCODING     = "Accept-Encoding";
     public static final String KEY_AUTHORIZATION       = "Authorization";
+    public static final String KEY_CACHE_CONTROL       = "Cache-Control";
     public static final String KEY_CONTENT_LENGTH      = "Content-Length";
+    public static final String KEY_CONTENT_ENCODING    = "Content-Encoding";
+    public static final String KEY_CONTENT_TYPE        = "Content-Type";
     public static final String KEY_CONTENT_DISPOSITION = "Content-Disposition";
     public static final String KEY_USER_AGENT          = "User-Agent";
+    public static final String KEY_ETAG                = "ETag";
+    public static final String KEY_LAST_MODIFIED       = "Last-Modified";
+    public static final String KEY_IF_NONE_MATCH       = "If-None-Match";
+    public static final String KEY_IF_MODIFIED_SINCE   = "If-Modified-Since";
+    public static final String KEY_IF_RANGE            = "If-Range";
+    public static final String KEY_RANGE               = "Range";
 
     //! Standard HTTP field values
     public static final String VAL_APPLICATION_JSON = "application/json";
+    public static final String VAL_GZIP             = "gzip";
 
-    /** UTF-8 charset identifier. */
+    /** UTF-8 charset identifier, it is also the default charset of responses. */
     private static final String UTF_8 = "UTF-8";
+    /** Charset parameter of Content-Type. */
+    private static final String CHARSET_PARAM = "charset=";
 
     /** Identifier of POST request method. */
     private static final String POST = "POST";
+    /** Identifier of HEAD request method. */
+    private static final String HEAD = "HEAD";
+
+    /** Cache-Control directive with max age of response. */
+    private static final String MAX_AGE = "max-age=";
 
     //! URL parameter dividers.
     private static final String URL_PARAM_START             = "?";
     private static final String URL_PARAM_DIVIDER           = "&";
     private static final String URL_PARAM_KEY_VALUE_DIVIDER = "=";
 
-    /** Size of temporary buffer during file downloading. */
+    /** Size of temporary buffer to read responses. */
     private static final int BUFFER_SIZE = 4096;
+    /** Size of pooled buffer during file downloading. */
+    private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+    /** Max number of pooled download buffers. */
+    private static final int DOWNLOAD_BUFFER_POOL_SIZE = 4;
+
+    //! Download bookkeeping files. Partial file and its metadata are kept in the download directory, named by URL hash.
+    private static final String DOWNLOAD_PREFIX      = ".";
+    private static final String PART_SUFFIX          = ".part";
+    private static final String META_SUFFIX          = ".meta";
+    private static final String META_ETAG            = "etag";
+    private static final String META_LAST_MODIFIED   = "lastModified";
+    private static final String META_PATH            = "path";
+    private static final String META_LENGTH          = "length";
+    /** Value of Range header field to resume download. */
+    private static final String RANGE_FROM           = "bytes=%d-";
+    /** HTTP status code of unsatisfiable range. */
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /** Max number of idle keep-alive connections per host. */
+    private static final int MAX_CONNECTIONS_PER_HOST = 5;
+    /** Number of TLS sessions kept for resumption. */
+    private static final int TLS_SESSION_CACHE_SIZE = 16;
+    /** Lifetime of cached TLS session, in seconds. */
+    private static final int TLS_SESSION_TIMEOUT = 3600;
+    /** Connect timeout of warm-up request, in milliseconds. */
+    private static final int PRECONNECT_TIMEOUT = 10000;
+
+    /** Socket factory shared by all HTTPS connections to keep them in the same pool and reuse TLS sessions. */
+    private static final SSLSocketFactory sSslSocketFactory;
+
+    /** Disk cache of GET responses, null if caching is disabled. */
+    private static volatile DiskCache sCache;
+    /** Directory of partial downloads and their metadata, null to use the temporary directory. */
+    private static volatile File sDownloadDir;
+
+    /** Pool of download buffers. */
+    private static final ArrayDeque<byte[]> sBufferPool = new ArrayDeque<>(DOWNLOAD_BUFFER_POOL_SIZE);
+
+    static {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_CONNECTIONS_PER_HOST));
+
+        SSLSocketFactory factory;
+        try {
+            SSLContext context = SSLContext.getDefault();
+            SSLSessionContext sessionContext = context.getClientSessionContext();
+            if (null != sessionContext) {
+                sessionContext.setSessionCacheSize(TLS_SESSION_CACHE_SIZE);
+                sessionContext.setSessionTimeout(TLS_SESSION_TIMEOUT);
+            }
+            factory = context.getSocketFactory();
+        } catch (NoSuchAlgorithmException e) {
+            factory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+        sSslSocketFactory = factory;
+    }
+
+    /**
+     * Interface to parse response body directly from the connection stream.
+     * @param <T> Type of parsed response.
+     */
+    public interface ResponseParser<T> {
+        /**
+         * Parses response body while it is received.
+         * Stream is closed by caller when parsing is finished.
+         * @param inStream Stream with decompressed response body.
+         * @param charset Charset of response body.
+         * @return parsed response.
+         * @throws Exception if parsing error occurs.
+         */
+        T parse(InputStream inStream, String charset) throws Exception;
+    }
+
+    /**
+     * Response served from the disk cache.
+     * @param <T> Type of parsed response.
+     */
+    public static class CachedResponse<T> {
+        /** Parsed response. */
+        public final T response;
+        /** true if response is fresh, false if it is stale and should be revalidated. */
+        public final boolean isFresh;
+
+        /**
+         * Constructor.
+         * @param response Parsed response.
+         * @param isFresh Freshness of response.
+         */
+        CachedResponse(T response, boolean isFresh) {
+            this.response = response;
+            this.isFresh = isFresh;
+        }
+    }
+
+    /**
+     * Sets disk cache for GET responses.
+     * @param cache Cache to use or null to disable caching.
+     */
+    public static void setCache(DiskCache cache) {
+        sCache = cache;
+    }
+
+    /**
+     * Sets directory of partial downloads, e.g. in the application cache, so they are not visible in destination folders.
+     * @param dir Directory to keep partial downloads in or null to use the temporary directory.
+     */
+    public static void setDownloadDir(File dir) {
+        sDownloadDir = dir;
+    }
+
+    /**
+     * Gets disk cache of GET responses.
+     * @return cache or null if caching is disabled.
+     */
+    public static DiskCache getCache() {
+        return sCache;
+    }
 
     /**
      * Executes HTTP GET request.
@@ -56,12 +208,124 @@ public class NetManager {
     public static String get(final String url,
             final List<KeyValue> headerFields,
             final List<KeyValue> urlParams) throws Exception {
-        URL connectUrl = new URL(urlWithParams(url, urlParams));
-        HttpURLConnection urlConnection = (HttpURLConnection)connectUrl.openConnection();
+        HttpURLConnection urlConnection = openConnection(urlWithParams(url, urlParams));
         setHeaders(headerFields, urlConnection);
-        String response = execute(urlConnection);
-        urlConnection.disconnect();
-        return response;
+        acceptGzip(urlConnection);
+        return execute(urlConnection);
+    }
+
+    /**
+     * Executes HTTP GET request and parses response body directly from the connection stream
+     * without building intermediate response string.
+     * @param url Destination URL.
+     * @param headerFields List contains custom fields to be added in header.
+     * @param urlParams parameters to be passed with URL.
+     * @param parser Parser to handle response stream.
+     * @param <T> Type of parsed response.
+     * @return parsed response.
+     * @throws Exception if request error occurs.
+     */
+    public static <T> T get(final String url,
+            final List<KeyValue> headerFields,
+            final List<KeyValue> urlParams,
+            final ResponseParser<T> parser) throws Exception {
+        return get(url, headerFields, urlParams, parser, false);
+    }
+
+    /**
+     * Executes HTTP GET request, parses response body directly from the connection stream
+     * and optionally stores it in the disk cache.
+     * If response is cached already, request is sent with its validators and
+     * "Not modified" response is served from the cache.
+     * Server Cache-Control "no-store" and "private" directives are not respected,
+     * since the cache is private to the application and caching is requested explicitly.
+     * @param url Destination URL.
+     * @param headerFields List contains custom fields to be added in header.
+     * @param urlParams parameters to be passed with URL.
+     * @param parser Parser to handle response stream.
+     * @param useCache true to store response in the disk cache.
+     * @param <T> Type of parsed response.
+     * @return parsed response.
+     * @throws Exception if request error occurs.
+     */
+    public static <T> T get(final String url,
+            final List<KeyValue> headerFields,
+            final List<KeyValue> urlParams,
+            final ResponseParser<T> parser,
+            final boolean useCache) throws Exception {
+        String fullUrl = urlWithParams(url, urlParams);
+        HttpURLConnection urlConnection = openConnection(fullUrl);
+        setHeaders(headerFields, urlConnection);
+        acceptGzip(urlConnection);
+
+        DiskCache cache = (useCache ? sCache : null);
+        DiskCache.Snapshot snapshot = (null != cache ? cache.get(fullUrl) : null);
+        try {
+            if (null != snapshot) {
+                if (null != snapshot.eTag) {
+                    urlConnection.setRequestProperty(KEY_IF_NONE_MATCH, snapshot.eTag);
+                }
+                if (null != snapshot.lastModified) {
+                    urlConnection.setRequestProperty(KEY_IF_MODIFIED_SINCE, snapshot.lastModified);
+                }
+                if (HttpURLConnection.HTTP_NOT_MODIFIED == getResponseCode(urlConnection)) {
+                    drain(urlConnection.getInputStream());
+                    cache.touch(fullUrl);
+                    cache.recordRevalidated();
+                    RequestMetrics.setFromCache();
+                    return parseCached(parser, snapshot.body);
+                }
+            }
+            return execute(urlConnection, parser, cache, fullUrl);
+        } finally {
+            if (null != snapshot) {
+                snapshot.close();
+            }
+        }
+    }
+
+    /**
+     * Gets GET response from the disk cache without network access.
+     * Response is fresh if its age does not exceed the greater of endpoint TTL and server max-age.
+     * @param url Destination URL.
+     * @param urlParams parameters to be passed with URL.
+     * @param ttl Endpoint time to live of cached response, in seconds.
+     * @param maxStale Max age of stale response which still can be served, in seconds.
+     * @param parser Parser to handle cached response.
+     * @param <T> Type of parsed response.
+     * @return cached response or null if there is no usable response in cache.
+     * @throws Exception if cached response can't be parsed.
+     */
+    public static <T> CachedResponse<T> getFromCache(final String url,
+            final List<KeyValue> urlParams,
+            final int ttl,
+            final int maxStale,
+            final ResponseParser<T> parser) throws Exception {
+        DiskCache cache = sCache;
+        if (null == cache) {
+            return null;
+        }
+
+        DiskCache.Snapshot snapshot = cache.get(urlWithParams(url, urlParams));
+        if (null == snapshot) {
+            cache.recordMiss();
+            return null;
+        }
+
+        try {
+            long age = snapshot.getAge();
+            boolean isFresh = (age <= Math.max(ttl, snapshot.maxAge));
+            if (!isFresh && age > maxStale) {
+                cache.recordMiss();
+                return null;
+            }
+            T response = parseCached(parser, snapshot.body);
+            cache.recordHit(isFresh);
+            RequestMetrics.setFromCache();
+            return new CachedResponse<>(response, isFresh);
+        } finally {
+            snapshot.close();
+        }
     }
 
     /**
@@ -75,87 +339,357 @@ public class NetManager {
     public static String post(final String url,
             final List<KeyValue> headerFields,
             final String body) throws Exception {
-        URL connectUrl = new URL(url);
-        HttpURLConnection urlConnection = (HttpURLConnection)connectUrl.openConnection();
+        HttpURLConnection urlConnection = openConnection(url);
         urlConnection.setDoOutput(true);
         urlConnection.setRequestMethod(POST);
 
         setHeaders(headerFields, urlConnection);
+        acceptGzip(urlConnection);
 
         if (null != body) {
             byte[] buff = body.getBytes(UTF_8);
             urlConnection.setRequestProperty(KEY_CONTENT_LENGTH, String.valueOf(buff.length));
+            connect(urlConnection);
+            RequestMetrics.addBytesOut(buff.length);
             DataOutputStream dos = new DataOutputStream(urlConnection.getOutputStream());
             dos.write(buff, 0, buff.length);
             dos.flush();
             dos.close();
         }
 
-        String response = execute(urlConnection);
-        urlConnection.disconnect();
+        return execute(urlConnection);
+    }
 
-        return response;
+    /**
+     * Opens connection to the host of given URL in advance, so the following requests
+     * reuse established TCP connection and TLS session from the keep-alive pool.
+     * @param url URL of the host to connect.
+     * @throws Exception if connection error occurs.
+     */
+    public static void preconnect(String url) throws Exception {
+        HttpURLConnection urlConnection = openConnection(url);
+        urlConnection.setRequestMethod(HEAD);
+        urlConnection.setConnectTimeout(PRECONNECT_TIMEOUT);
+        try {
+            // Any response is fine, the connection is just returned to the pool.
+            int statusCode = urlConnection.getResponseCode();
+            InputStream inStream = (statusCode < HttpURLConnection.HTTP_BAD_REQUEST) ?
+                    urlConnection.getInputStream() : urlConnection.getErrorStream();
+            if (null != inStream) {
+                drain(inStream);
+            }
+        } catch (IOException e) {
+            urlConnection.disconnect();
+            throw e;
+        }
     }
 
     /**
-     * Downloads a file from a URL
+     * Downloads a file from a URL.
+     * Data is written to a partial file in the download directory which is moved to the destination file
+     * when the whole file is received. Interrupted download is resumed with range request
+     * if server still has the same file version. Validators and path of the saved file are kept
+     * in the metadata, if the file is still there and server confirms it is not modified, transfer is skipped.
      * @param url HTTP URL of the file to be downloaded
      * @param saveDir path of the directory to save the file
      * @return Downloaded file path.
      * @throws Exception if request error occurs.
      */
     public static String download(String url, String saveDir) throws Exception {
-        String filePath;
+        String urlFileName = fileNameOf(url);
+        File downloadDir = getDownloadDir();
+        String key = DiskCache.keyOf(url);
+        File partFile = new File(downloadDir, key + PART_SUFFIX);
+        File metaFile = new File(downloadDir, key + META_SUFFIX);
+        Properties meta = readProperties(metaFile);
+        String eTag = meta.getProperty(META_ETAG);
+        String lastModified = meta.getProperty(META_LAST_MODIFIED);
+        String validator = (null != eTag ? eTag : lastModified);
+        String savedPath = meta.getProperty(META_PATH);
+        File savedFile = (null != savedPath ? new File(savedPath) : null);
+        // Saved file is reused only if it is in the same directory and is not changed since download.
+        boolean isSaved = (null != savedFile && new File(saveDir).getAbsoluteFile().equals(savedFile.getParentFile())
+                && savedFile.isFile() && savedFile.length() == parseLength(meta.getProperty(META_LENGTH)));
+
+        HttpURLConnection urlConnection = openConnection(url);
+        long resumeFrom = 0;
+        if (null != validator && partFile.length() > 0) {
+            resumeFrom = partFile.length();
+            urlConnection.setRequestProperty(KEY_RANGE, String.format(RANGE_FROM, resumeFrom));
+            urlConnection.setRequestProperty(KEY_IF_RANGE, validator);
+        } else if (null != validator && isSaved) {
+            if (null != eTag) {
+                urlConnection.setRequestProperty(KEY_IF_NONE_MATCH, eTag);
+            }
+            if (null != lastModified) {
+                urlConnection.setRequestProperty(KEY_IF_MODIFIED_SINCE, lastModified);
+            }
+        }
 
-        URL connectUrl = new URL(url);
-        HttpURLConnection urlConnection = (HttpURLConnection)connectUrl.openConnection();
+        int statusCode = getResponseCode(urlConnection);
+        if (HttpURLConnection.HTTP_NOT_MODIFIED == statusCode && isSaved) {
+            // The same file is saved already.
+            drain(urlConnection.getInputStream());
+            return savedFile.getAbsolutePath();
+        }
+        if (HTTP_RANGE_NOT_SATISFIABLE == statusCode && resumeFrom > 0) {
+            // Partial file does not match remote file, start from scratch.
+            drain(urlConnection.getErrorStream());
+            //noinspection ResultOfMethodCallIgnored
+            partFile.delete();
+            return download(url, saveDir);
+        }
 
-        int statusCode = urlConnection.getResponseCode();
-        if (HttpURLConnection.HTTP_OK == statusCode || HttpURLConnection.HTTP_ACCEPTED == statusCode) {
-            String fileName = "";
-            String disposition = urlConnection.getHeaderField(KEY_CONTENT_DISPOSITION);
-
-            if (disposition != null) {
-                // extracts file name from header field
-                int index = disposition.indexOf("filename=");
-                if (index > 0) {
-                    fileName = disposition.substring(index + 10, disposition.length() - 1);
-                }
-            } else {
-                // extracts file name from URL
-                fileName = url.substring(url.lastIndexOf("/") + 1, url.length());
+        boolean resumed = (HttpURLConnection.HTTP_PARTIAL == statusCode && resumeFrom > 0);
+        if (!resumed && HttpURLConnection.HTTP_OK != statusCode && HttpURLConnection.HTTP_ACCEPTED != statusCode) {
+            throw new HttpException(statusCode, readErrorStream(urlConnection));
+        }
+
+        String fileName = urlFileName;
+        String disposition = urlConnection.getHeaderField(KEY_CONTENT_DISPOSITION);
+        if (disposition != null) {
+            // extracts file name from header field
+            int index = disposition.indexOf("filename=");
+            if (index > 0) {
+                fileName = disposition.substring(index + 10, disposition.length() - 1);
             }
+        }
+
+        if (!resumed) {
+            // Remember validators of this file version to resume or skip download later.
+            meta.clear();
+            setProperty(meta, META_ETAG, urlConnection.getHeaderField(KEY_ETAG));
+            setProperty(meta, META_LAST_MODIFIED, urlConnection.getHeaderField(KEY_LAST_MODIFIED));
+            writeProperties(metaFile, meta);
+        }
+
+        long expectedLength = urlConnection.getContentLength();
+        if (expectedLength >= 0 && resumed) {
+            expectedLength += resumeFrom;
+        }
+
+        CountingInputStream countingStream = new CountingInputStream(urlConnection.getInputStream());
+        try {
+            writeToFile(new CancellableInputStream(countingStream), partFile, resumed);
+        } catch (IOException e) {
+            // Partial file is kept to resume download.
+            urlConnection.disconnect();
+            throw e;
+        } finally {
+            RequestMetrics.addTransfer(countingStream.getReadTime(), countingStream.getCount(), countingStream.getCount());
+        }
+
+        if (expectedLength >= 0 && partFile.length() != expectedLength) {
+            throw new IOException("Download is incomplete, received " + partFile.length() + " of " + expectedLength + " bytes");
+        }
+
+        File file = new File(saveDir, fileName);
+        commitFile(partFile, file);
+        // Partial file is moved, metadata now describes the saved file.
+        setProperty(meta, META_PATH, file.getAbsolutePath());
+        setProperty(meta, META_LENGTH, String.valueOf(file.length()));
+        writeProperties(metaFile, meta);
+        long lastModifiedTime = urlConnection.getLastModified();
+        if (lastModifiedTime > 0) {
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(lastModifiedTime);
+        }
+
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Saves a local copy of a file downloaded from a URL, e.g. from an image cache.
+     * The copy is written to a partial file in the download directory which is moved to the destination file when it is complete.
+     * @param source Local copy of the remote file.
+     * @param url HTTP URL the file was downloaded from, it gives the file name.
+     * @param saveDir path of the directory to save the file
+     * @return Saved file path.
+     * @throws IOException if file can't be copied.
+     */
+    public static String saveFile(File source, String url, String saveDir) throws IOException {
+        String fileName = fileNameOf(url);
+        File partFile = new File(getDownloadDir(), DiskCache.keyOf(url) + PART_SUFFIX);
+        writeToFile(new FileInputStream(source), partFile, false);
+        if (partFile.length() != source.length()) {
+            throw new IOException("Copy is incomplete, written " + partFile.length() + " of " + source.length() + " bytes");
+        }
+
+        File file = new File(saveDir, fileName);
+        commitFile(partFile, file);
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Gets directory of partial downloads, creating it if needed.
+     * @return download directory.
+     * @throws IOException if directory can't be created.
+     */
+    private static File getDownloadDir() throws IOException {
+        File dir = sDownloadDir;
+        if (null == dir) {
+            // It is the application cache directory on Android.
+            dir = new File(System.getProperty("java.io.tmpdir"));
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        return dir;
+    }
 
-            InputStream inStream = urlConnection.getInputStream();
-            filePath = saveDir + File.separator + fileName;
-            FileOutputStream outStream = new FileOutputStream(filePath);
+    /**
+     * Gets file name from the last URL path segment.
+     * @param url HTTP URL of a file.
+     * @return file name.
+     */
+    private static String fileNameOf(String url) {
+        return url.substring(url.lastIndexOf("/") + 1, url.length());
+    }
 
+    /**
+     * Writes stream to a file through pooled buffer. Stream is closed when it is written.
+     * @param inStream Stream to write.
+     * @param file Destination file.
+     * @param append true to append data to the file, false to overwrite it.
+     * @throws IOException if error occurs.
+     */
+    private static void writeToFile(InputStream inStream, File file, boolean append) throws IOException {
+        byte[] buffer = obtainBuffer();
+        FileOutputStream outStream = new FileOutputStream(file, append);
+        try {
             int bytesRead;
-            byte[] buffer = new byte[BUFFER_SIZE];
             while ((bytesRead = inStream.read(buffer)) != -1) {
                 outStream.write(buffer, 0, bytesRead);
             }
-
+        } finally {
             outStream.close();
             inStream.close();
-        } else {
-            String response = readStream(new BufferedInputStream(urlConnection.getErrorStream()));
-            throw new Exception("Request failed with status code " + String.valueOf(statusCode) + ", body: " + response);
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Atomically replaces destination file with the written temporary file, the temporary file is removed.
+     * @param tmpFile Completely written temporary file.
+     * @param file Destination file.
+     * @throws IOException if file can't be moved.
+     */
+    private static void commitFile(File tmpFile, File file) throws IOException {
+        if (tmpFile.renameTo(file)) {
+            return;
         }
+        // Download directory is on another file system, the file is copied next to the destination and renamed there.
+        File copy = File.createTempFile(DOWNLOAD_PREFIX, PART_SUFFIX, file.getParentFile());
+        try {
+            writeToFile(new FileInputStream(tmpFile), copy, false);
+            if (copy.length() != tmpFile.length() || !copy.renameTo(file)) {
+                throw new IOException("Unable to move " + tmpFile + " to " + file);
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            copy.delete();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        tmpFile.delete();
+    }
 
-        urlConnection.disconnect();
+    /**
+     * Gets download buffer from the pool or allocates a new one.
+     * @return buffer.
+     */
+    private static byte[] obtainBuffer() {
+        synchronized (sBufferPool) {
+            byte[] buffer = sBufferPool.poll();
+            return (null != buffer ? buffer : new byte[DOWNLOAD_BUFFER_SIZE]);
+        }
+    }
 
-        return filePath;
+    /**
+     * Returns download buffer to the pool.
+     * @param buffer Buffer obtained by {@link #obtainBuffer()}.
+     */
+    private static void releaseBuffer(byte[] buffer) {
+        synchronized (sBufferPool) {
+            if (sBufferPool.size() < DOWNLOAD_BUFFER_POOL_SIZE) {
+                sBufferPool.push(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads properties file.
+     * @param file File to read.
+     * @return read properties or empty properties if file does not exist or is corrupted.
+     */
+    private static Properties readProperties(File file) {
+        Properties properties = new Properties();
+        if (file.exists()) {
+            try {
+                FileInputStream inStream = new FileInputStream(file);
+                try {
+                    properties.load(inStream);
+                } finally {
+                    inStream.close();
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                properties.clear();
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Writes properties file.
+     * @param file File to write.
+     * @param properties Properties to write.
+     * @throws IOException if error occurs.
+     */
+    private static void writeProperties(File file, Properties properties) throws IOException {
+        FileOutputStream outStream = new FileOutputStream(file);
+        try {
+            properties.store(outStream, null);
+        } finally {
+            outStream.close();
+        }
+    }
+
+    /**
+     * Parses file length stored in properties.
+     * @param value Stored value or null.
+     * @return length or -1 if value is missing or invalid.
+     */
+    private static long parseLength(String value) {
+        if (null == value) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Sets property if value is not null.
+     * @param properties Properties to update.
+     * @param key Property key.
+     * @param value Property value or null.
+     */
+    private static void setProperty(Properties properties, String key, String value) {
+        if (null != value) {
+            properties.setProperty(key, value);
+        }
     }
 
     /**
      * Reads input stream into string.
      * @param inStream stream to read.
+     * @param charset Charset of stream data.
      * @return String with stream data.
      * @throws IOException if error occurs.
      */
-    private static String readStream(InputStream inStream) throws IOException {
-        InputStreamReader streamReader = new InputStreamReader(inStream);
+    private static String readStream(InputStream inStream, String charset) throws IOException {
+        InputStreamReader streamReader = new InputStreamReader(inStream, charset);
         StringBuilder stringBuilder = new StringBuilder();
         BufferedReader br = new BufferedReader(streamReader);
         String read = br.readLine();
@@ -170,6 +704,180 @@ public class NetManager {
         return stringBuilder.toString();
     }
 
+    /**
+     * Reads the rest of the stream and closes it, so the connection can be reused.
+     * @param inStream stream to drain.
+     * @throws IOException if error occurs.
+     */
+    private static void drain(InputStream inStream) throws IOException {
+        drain(inStream, inStream);
+    }
+
+    /**
+     * Reads the rest of decoded stream and its source and closes them, so the connection can be reused.
+     * Decompressing stream may stop reading its source before the end, e.g. at gzip trailer.
+     * @param inStream decoded stream to drain.
+     * @param wireStream source stream of decoded one.
+     * @throws IOException if error occurs.
+     */
+    private static void drain(InputStream inStream, InputStream wireStream) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            while (-1 != inStream.read(buffer)) {
+                // Skip remaining data.
+            }
+            if (wireStream != inStream) {
+                while (-1 != wireStream.read(buffer)) {
+                    // Skip remaining data.
+                }
+            }
+        } finally {
+            inStream.close();
+        }
+    }
+
+    /**
+     * Opens connection to given URL.
+     * HTTPS connections share the same socket factory to reuse pooled connections and TLS sessions.
+     * Connection is attached to the request executed in the current thread to be closed on cancellation.
+     * @param url Destination URL.
+     * @return Not connected URL connection.
+     * @throws IOException if URL is invalid or request is cancelled.
+     */
+    private static HttpURLConnection openConnection(String url) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection)new URL(url).openConnection();
+        if (urlConnection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection)urlConnection).setSSLSocketFactory(sSslSocketFactory);
+        }
+        CancellationToken.attach(urlConnection);
+        return urlConnection;
+    }
+
+    /**
+     * Reads error stream of the connection.
+     * @param urlConnection Connection with error response.
+     * @return error response body or empty string if there is no body.
+     * @throws IOException if error occurs.
+     */
+    private static String readErrorStream(HttpURLConnection urlConnection) throws IOException {
+        InputStream errorStream = urlConnection.getErrorStream();
+        return (null == errorStream ? "" : readMeteredStream(urlConnection, errorStream));
+    }
+
+    /**
+     * Reads response stream into string and reports its transfer to request metrics.
+     * @param urlConnection Connection which received response.
+     * @param inStream Response stream.
+     * @return String with stream data.
+     * @throws IOException if error occurs.
+     */
+    private static String readMeteredStream(HttpURLConnection urlConnection, InputStream inStream) throws IOException {
+        CountingInputStream wireStream = new CountingInputStream(inStream);
+        CountingInputStream decodedStream = null;
+        try {
+            decodedStream = decode(urlConnection, wireStream);
+            return readStream(new BufferedInputStream(new CancellableInputStream(decodedStream)), charsetOf(urlConnection));
+        } finally {
+            RequestMetrics.addTransfer(wireStream.getReadTime(), wireStream.getCount(),
+                    (null == decodedStream ? 0 : decodedStream.getCount()));
+        }
+    }
+
+    /**
+     * Requests compressed response body. Compressed body is not decompressed transparently
+     * by the connection then, it is decompressed by {@link #decode(HttpURLConnection, InputStream)}.
+     * @param urlConnection Connection to execute request.
+     */
+    private static void acceptGzip(HttpURLConnection urlConnection) {
+        urlConnection.setRequestProperty(KEY_ACCEPT_ENCODING, VAL_GZIP);
+    }
+
+    /**
+     * Wraps response stream to decompress it according to Content-Encoding.
+     * @param urlConnection Connection which received response.
+     * @param wireStream Response stream as it is received.
+     * @return stream counting decompressed bytes.
+     * @throws IOException if compressed stream header can't be read.
+     */
+    private static CountingInputStream decode(HttpURLConnection urlConnection, InputStream wireStream) throws IOException {
+        String encoding = urlConnection.getHeaderField(KEY_CONTENT_ENCODING);
+        if (null != encoding && VAL_GZIP.equalsIgnoreCase(encoding.trim())) {
+            return new CountingInputStream(new GZIPInputStream(wireStream, BUFFER_SIZE));
+        }
+        return new CountingInputStream(wireStream);
+    }
+
+    /**
+     * Gets charset of response from Content-Type.
+     * @param urlConnection Connection which received response.
+     * @return canonical charset name, UTF-8 if charset is not specified or not supported.
+     */
+    private static String charsetOf(HttpURLConnection urlConnection) {
+        String contentType = urlConnection.getHeaderField(KEY_CONTENT_TYPE);
+        if (null != contentType) {
+            int index = contentType.toLowerCase(Locale.US).indexOf(CHARSET_PARAM);
+            if (index >= 0) {
+                int start = index + CHARSET_PARAM.length();
+                int end = contentType.indexOf(';', start);
+                String charset = contentType.substring(start, (end < 0 ? contentType.length() : end)).trim();
+                if (charset.length() > 1 && charset.startsWith("\"") && charset.endsWith("\"")) {
+                    charset = charset.substring(1, charset.length() - 1);
+                }
+                try {
+                    if (Charset.isSupported(charset)) {
+                        return Charset.forName(charset).name();
+                    }
+                } catch (IllegalCharsetNameException e) {
+                    // Use default charset below.
+                }
+            }
+        }
+        return UTF_8;
+    }
+
+    /**
+     * Connects to the server, if it is not connected yet, and reports connection time to request metrics.
+     * @param urlConnection Connection to connect.
+     * @throws IOException if connection error occurs.
+     */
+    private static void connect(HttpURLConnection urlConnection) throws IOException {
+        long startTime = System.nanoTime();
+        urlConnection.connect();
+        RequestMetrics.addConnectTime(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Sends request, waits for response status and reports timings to request metrics.
+     * @param urlConnection Connection to execute request.
+     * @return HTTP status code.
+     * @throws IOException if request error occurs.
+     */
+    private static int getResponseCode(HttpURLConnection urlConnection) throws IOException {
+        connect(urlConnection);
+        long startTime = System.nanoTime();
+        int statusCode = urlConnection.getResponseCode();
+        RequestMetrics.addResponse(System.nanoTime() - startTime, statusCode);
+        return statusCode;
+    }
+
+    /**
+     * Parses cached response and reports parse time to request metrics.
+     * @param parser Parser to handle cached response.
+     * @param body Cached response body.
+     * @param <T> Type of parsed response.
+     * @return parsed response.
+     * @throws Exception if response can't be parsed.
+     */
+    private static <T> T parseCached(ResponseParser<T> parser, InputStream body) throws Exception {
+        long startTime = System.nanoTime();
+        try {
+            // Only UTF-8 responses are cached.
+            return parser.parse(new CancellableInputStream(body), UTF_8);
+        } finally {
+            RequestMetrics.addParseTime(System.nanoTime() - startTime);
+        }
+    }
+
     /**
      * Sets request headers.
      * @param headerFields Array of headers to add to the request.
@@ -191,16 +899,101 @@ public class NetManager {
      */
     private static String execute(HttpURLConnection urlConnection) throws Exception {
         String response;
-        int statusCode = urlConnection.getResponseCode();
+        int statusCode = getResponseCode(urlConnection);
         if (HttpURLConnection.HTTP_OK == statusCode || HttpURLConnection.HTTP_ACCEPTED == statusCode) {
-            response = readStream(new BufferedInputStream(urlConnection.getInputStream()));
+            response = readMeteredStream(urlConnection, urlConnection.getInputStream());
         }  else {
-            response = readStream(new BufferedInputStream(urlConnection.getErrorStream()));
-            throw new Exception("Request failed with status code " + String.valueOf(statusCode) + ", body: " + response);
+            throw new HttpException(statusCode, readErrorStream(urlConnection));
         }
         return response;
     }
 
+    /**
+     * Executes HTTP request and passes response stream to the parser.
+     * @param urlConnection Connection to execute request.
+     * @param parser Parser to handle response stream.
+     * @param cache Cache to store response body or null.
+     * @param cacheUrl URL to identify response in cache.
+     * @param <T> Type of parsed response.
+     * @return parsed response.
+     * @throws Exception if request failed.
+     */
+    private static <T> T execute(HttpURLConnection urlConnection,
+            ResponseParser<T> parser,
+            DiskCache cache,
+            String cacheUrl) throws Exception {
+        int statusCode = getResponseCode(urlConnection);
+        if (HttpURLConnection.HTTP_OK != statusCode && HttpURLConnection.HTTP_ACCEPTED != statusCode) {
+            throw new HttpException(statusCode, readErrorStream(urlConnection));
+        }
+
+        CountingInputStream wireStream = new CountingInputStream(urlConnection.getInputStream());
+        CountingInputStream decodedStream;
+        try {
+            decodedStream = decode(urlConnection, wireStream);
+        } catch (IOException e) {
+            urlConnection.disconnect();
+            RequestMetrics.addTransfer(wireStream.getReadTime(), wireStream.getCount(), 0);
+            throw e;
+        }
+        InputStream inStream = new BufferedInputStream(new CancellableInputStream(decodedStream));
+        String charset = charsetOf(urlConnection);
+        // Cache does not keep response charset, so only responses in the default one are cached.
+        if (null != cache && UTF_8.equals(charset)) {
+            try {
+                DiskCache.Editor editor = cache.edit(cacheUrl,
+                        parseMaxAge(urlConnection.getHeaderField(KEY_CACHE_CONTROL)),
+                        urlConnection.getHeaderField(KEY_ETAG),
+                        urlConnection.getHeaderField(KEY_LAST_MODIFIED));
+                // Entry is committed when the whole body is read.
+                inStream = new DiskCache.TeeInputStream(inStream, editor);
+            } catch (IOException e) {
+                // Response is not cached.
+            }
+        }
+        long startTime = System.nanoTime();
+        try {
+            T response = parser.parse(inStream, charset);
+            // Parser may stop before the end of body, consume it to return connection to the pool.
+            drain(inStream, wireStream);
+            return response;
+        } catch (Exception e) {
+            urlConnection.disconnect();
+            throw e;
+        } finally {
+            inStream.close();
+            // Parsing is interleaved with reading, time spent waiting for data is not parse time.
+            // Decompression time is a part of parse time.
+            long readTime = wireStream.getReadTime();
+            RequestMetrics.addTransfer(readTime, wireStream.getCount(), decodedStream.getCount());
+            RequestMetrics.addParseTime(System.nanoTime() - startTime - readTime);
+        }
+    }
+
+    /**
+     * Gets max-age value from Cache-Control header field.
+     * @param cacheControl Value of Cache-Control field or null.
+     * @return max-age value in seconds or -1 if it is absent.
+     */
+    private static int parseMaxAge(String cacheControl) {
+        if (null != cacheControl) {
+            int index = cacheControl.indexOf(MAX_AGE);
+            if (index >= 0) {
+                int start = index + MAX_AGE.length();
+                int end = start;
+                while (end < cacheControl.length() && Character.isDigit(cacheControl.charAt(end))) {
+                    ++end;
+                }
+                try {
+                    return Integer.parseInt(cacheControl.substring(start, end));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
     /**
      * Extends base URL with given parameters.
      * @param baseUrl URL to be extended.
@@ -210,12 +1003,27 @@ public class NetManager {
     private static String urlWithParams(String baseUrl, List<KeyValue> urlParams) {
         if (null != baseUrl && null != urlParams && urlParams.size() > 0) {
             KeyValue pair = urlParams.get(0);
-            baseUrl += URL_PARAM_START + pair.key + URL_PARAM_KEY_VALUE_DIVIDER + Uri.encode(pair.value);
+            baseUrl += URL_PARAM_START + pair.key + URL_PARAM_KEY_VALUE_DIVIDER + encode(pair.value);
             for (int i = 1; i < urlParams.size(); ++i) {
                 pair = urlParams.get(i);
-                baseUrl += URL_PARAM_DIVIDER + pair.key + URL_PARAM_KEY_VALUE_DIVIDER + Uri.encode(pair.value);
+                baseUrl += URL_PARAM_DIVIDER + pair.key + URL_PARAM_KEY_VALUE_DIVIDER + encode(pair.value);
             }
         }
         return baseUrl;
     }
+
+    /**
+     * Encodes URL parameter value.
+     * @param value Parameter value.
+     * @return percent-encoded value.
+     */
+    private static String encode(String value) {
+        try {
+            // Spaces are encoded as %20 rather than form encoding '+'.
+            return URLEncoder.encode(value, UTF_8).replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,187 @@
+package com.task.redditclient.net;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Aggregated metrics of engine requests.
+ * Latency percentiles are calculated over the latest requests of each action.
+ */
+public class NetMetrics {
+    /**
+     * Interface to receive measurements of completed requests.
+     */
+    public interface Listener {
+        /**
+         * Called when request is completed, in the background thread which executed it.
+         * @param action Measured action.
+         * @param metrics Request measurements.
+         */
+        void onRequestMeasured(Engine.Action action, RequestMetrics metrics);
+    }
+
+    /**
+     * Measured request phases.
+     */
+    public enum Phase {
+        /** Whole request. */
+        TOTAL,
+        /** Connection establishment, including DNS lookup and TLS handshake. */
+        CONNECT,
+        /** Waiting for response status. */
+        FIRST_BYTE,
+        /** Reading response body. */
+        TRANSFER,
+        /** Parsing response. */
+        PARSE
+    }
+
+    /** Number of the latest requests to calculate latency percentiles. */
+    private static final int MAX_SAMPLES = 256;
+
+    /** Listeners to receive measurements. */
+    private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    /** Statistics by action. */
+    private final EnumMap<Engine.Action, ActionStats> mStats = new EnumMap<>(Engine.Action.class);
+
+    /**
+     * Adds listener to receive measurements.
+     * @param listener Listener to add.
+     */
+    public void addListener(Listener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Removes listener.
+     * @param listener Listener to remove.
+     */
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Gets latency percentile of the latest requests.
+     * @param action Measured action.
+     * @param phase Measured phase.
+     * @param percentile Percentile from 0 to 100, e.g. 95.
+     * @return latency in milliseconds or -1 if there are no measurements.
+     */
+    public synchronized long getPercentile(Engine.Action action, Phase phase, int percentile) {
+        ActionStats stats = mStats.get(action);
+        return (null == stats ? -1 : stats.getPercentile(phase, percentile));
+    }
+
+    /**
+     * Clears collected statistics.
+     */
+    public synchronized void reset() {
+        mStats.clear();
+    }
+
+    /**
+     * Formats collected statistics to compare builds and networks.
+     * @return human readable statistics.
+     */
+    public synchronized String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<Engine.Action, ActionStats> entry : mStats.entrySet()) {
+            ActionStats stats = entry.getValue();
+            builder.append(String.format(Locale.US, "%s: %d requests, %d failed, %d cached, in %d B (%d B decoded), out %d B, status %s%n",
+                    entry.getKey(), stats.mCount, stats.mFailedCount, stats.mCachedCount,
+                    stats.mBytesIn, stats.mDecodedBytesIn, stats.mBytesOut, stats.mStatusCodes));
+            for (Phase phase : Phase.values()) {
+                builder.append(String.format(Locale.US, "  %-10s p50 %5d ms, p95 %5d ms, p99 %5d ms%n", phase,
+                        stats.getPercentile(phase, 50), stats.getPercentile(phase, 95), stats.getPercentile(phase, 99)));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Records measurements of completed request and passes them to listeners.
+     * @param action Measured action.
+     * @param metrics Request measurements.
+     */
+    void record(Engine.Action action, RequestMetrics metrics) {
+        synchronized (this) {
+            ActionStats stats = mStats.get(action);
+            if (null == stats) {
+                stats = new ActionStats();
+                mStats.put(action, stats);
+            }
+            stats.add(metrics);
+        }
+        for (Listener listener : mListeners) {
+            listener.onRequestMeasured(action, metrics);
+        }
+    }
+
+    /**
+     * Statistics of a single action.
+     */
+    private static class ActionStats {
+        //! Request counters.
+        private int mCount;
+        private int mFailedCount;
+        private int mCachedCount;
+        //! Byte counters.
+        private long mBytesIn;
+        private long mDecodedBytesIn;
+        private long mBytesOut;
+        /** Number of responses by status code. */
+        private final TreeMap<Integer, Integer> mStatusCodes = new TreeMap<>();
+        /** Ring buffers of the latest latencies by phase, in milliseconds. */
+        private final long[][] mSamples = new long[Phase.values().length][MAX_SAMPLES];
+
+        /**
+         * Adds request measurements.
+         * @param metrics Request measurements.
+         */
+        void add(RequestMetrics metrics) {
+            int index = mCount % MAX_SAMPLES;
+            mSamples[Phase.TOTAL.ordinal()][index] = metrics.getTotalTime();
+            mSamples[Phase.CONNECT.ordinal()][index] = metrics.getConnectTime();
+            mSamples[Phase.FIRST_BYTE.ordinal()][index] = metrics.getFirstByteTime();
+            mSamples[Phase.TRANSFER.ordinal()][index] = metrics.getTransferTime();
+            mSamples[Phase.PARSE.ordinal()][index] = metrics.getParseTime();
+
+            ++mCount;
+            if (metrics.isFailed()) {
+                ++mFailedCount;
+            }
+            if (metrics.isFromCache()) {
+                ++mCachedCount;
+            }
+            mBytesIn += metrics.getBytesIn();
+            mDecodedBytesIn += metrics.getDecodedBytesIn();
+            mBytesOut += metrics.getBytesOut();
+            if (0 != metrics.getStatusCode()) {
+                Integer count = mStatusCodes.get(metrics.getStatusCode());
+                mStatusCodes.put(metrics.getStatusCode(), (null == count ? 1 : count + 1));
+            }
+        }
+
+        /**
+         * Gets latency percentile of the latest requests.
+         * @param phase Measured phase.
+         * @param percentile Percentile from 0 to 100.
+         * @return latency in milliseconds or -1 if there are no measurements.
+         */
+        long getPercentile(Phase phase, int percentile) {
+            int size = Math.min(mCount, MAX_SAMPLES);
+            if (0 == size) {
+                return -1;
+            }
+            long[] samples = Arrays.copyOf(mSamples[phase.ordinal()], size);
+            Arrays.sort(samples);
+            // Nearest rank method.
+            int rank = (int)Math.ceil(percentile / 100.0 * size);
+            return samples[Math.max(0, Math.min(size - 1, rank - 1))];
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.task.redditclient.net;
+
+import com.task.redditclient.application.Common;
+
+/**
+ * Policy to choose number of entries per "Get entries" request.
+ * The first page is small to be displayed fast. Size of the next pages is chosen
+ * from measured request latency, throughput and scroll rate:
+ * page is big enough that transfer time is comparable with latency,
+ * and that it is received before user scrolls through its size at current rate.
+ */
+class PageSizePolicy {
+    /** Weight of the new sample in moving averages. */
+    private static final float SMOOTHING = 0.3f;
+
+    /** Average latency till the first response byte, in seconds. 0 if not measured yet. */
+    private float mLatency;
+    /** Average throughput in bytes per second. 0 if not measured yet. */
+    private float mThroughput;
+    /** Average size of an entry in response, in bytes. 0 if not measured yet. */
+    private float mEntrySize;
+    /** Current scroll rate in entries per second. */
+    private float mScrollRate;
+
+    /**
+     * Updates scroll rate.
+     * @param entriesPerSecond Scroll rate in entries per second.
+     */
+    synchronized void setScrollRate(float entriesPerSecond) {
+        mScrollRate = Math.max(0, entriesPerSecond);
+    }
+
+    /**
+     * Updates measurements with completed request.
+     * @param entryCount Number of received entries.
+     * @param bytes Size of response body in bytes.
+     * @param latency Time till the first response byte, in milliseconds.
+     * @param transferTime Time to receive response body, in milliseconds.
+     */
+    synchronized void onPageReceived(int entryCount, long bytes, long latency, long transferTime) {
+        if (entryCount <= 0 || bytes <= 0) {
+            return;
+        }
+        mLatency = average(mLatency, latency / 1000f);
+        mEntrySize = average(mEntrySize, (float)bytes / entryCount);
+        if (transferTime > 0) {
+            mThroughput = average(mThroughput, bytes * 1000f / transferTime);
+        }
+    }
+
+    /**
+     * Gets number of entries to request.
+     * @param firstPage true if the first page is requested.
+     * @return page size in range of {@link Common#MIN_PAGE_SIZE} to {@link Common#MAX_PAGE_SIZE}.
+     */
+    synchronized int getPageSize(boolean firstPage) {
+        if (firstPage) {
+            return Common.FIRST_PAGE_SIZE;
+        }
+        if (0 == mLatency || 0 == mThroughput || 0 == mEntrySize) {
+            return Common.DEFAULT_PAGE_SIZE;
+        }
+
+        // Entries which can be transferred during latency time.
+        float size = mLatency * mThroughput / mEntrySize;
+
+        // Entries scrolled while the page is received: rate * (latency + size * entryTime) <= size.
+        float entryTime = mEntrySize / mThroughput;
+        if (mScrollRate * entryTime >= 1) {
+            size = Common.MAX_PAGE_SIZE;
+        } else {
+            size = Math.max(size, mScrollRate * mLatency / (1 - mScrollRate * entryTime));
+        }
+
+        return Math.max(Common.MIN_PAGE_SIZE, Math.min(Common.MAX_PAGE_SIZE, Math.round(size)));
+    }
+
+    /**
+     * Calculates moving average.
+     * @param average Current average or 0 if there are no samples.
+     * @param sample New sample.
+     * @return updated average.
+     */
+    private static float average(float average, float sample) {
+        return (0 == average ? sample : average + SMOOTHING * (sample - average));
+    }
+}
@@ -0,0 +1,115 @@
+package com.task.redditclient.net;
+
+import android.os.Process;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded thread pool to execute engine requests in the background.
+ * Queued tasks are started in order of their priority,
+ * tasks with the same priority are started in order of submission.
+ */
+class RequestExecutor extends ThreadPoolExecutor {
+    /** Time to keep idle threads alive, in seconds. */
+    private static final long KEEP_ALIVE_TIME = 30;
+
+    /** Counter to keep submission order of tasks with the same priority. */
+    private static final AtomicLong sSequence = new AtomicLong();
+
+    /**
+     * Task which can be queued by priority.
+     */
+    static abstract class Task implements Runnable, Comparable<Task> {
+        /** Task priority, it may be raised while task is queued. */
+        private volatile Engine.Priority mPriority;
+        /** Submission order. */
+        private final long mSequence;
+
+        /**
+         * Constructor.
+         * @param priority Task priority.
+         */
+        Task(Engine.Priority priority) {
+            mPriority = priority;
+            mSequence = sSequence.getAndIncrement();
+        }
+
+        /**
+         * Gets task priority.
+         * @return task priority.
+         */
+        Engine.Priority getPriority() {
+            return mPriority;
+        }
+
+        /**
+         * @see Comparable#compareTo(Object)
+         */
+        @Override
+        public int compareTo(Task other) {
+            int diff = mPriority.ordinal() - other.mPriority.ordinal();
+            if (0 == diff) {
+                diff = (mSequence < other.mSequence ? -1 : (mSequence > other.mSequence ? 1 : 0));
+            }
+            return diff;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param poolSize Max number of concurrently executed tasks.
+     */
+    RequestExecutor(int poolSize) {
+        super(poolSize, poolSize, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+        allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues task for execution.
+     * @param task Task to execute.
+     */
+    void execute(Task task) {
+        super.execute(task);
+    }
+
+    /**
+     * Raises priority of queued task. Running and completed tasks are not affected.
+     * @param task Task to promote.
+     * @param priority New priority, it is ignored if it is not higher than the current one.
+     */
+    void promote(Task task, Engine.Priority priority) {
+        // Queue order is kept only if priority is changed while task is out of the queue.
+        if (priority.ordinal() < task.mPriority.ordinal() && remove(task)) {
+            task.mPriority = priority;
+            super.execute(task);
+        }
+    }
+
+    /**
+     * Factory of background priority worker threads.
+     */
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        /** Counter to name threads. */
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        /**
+         * @see ThreadFactory#newThread(Runnable)
+         */
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "Engine #" + mCount.getAndIncrement());
+        }
+    }
+}
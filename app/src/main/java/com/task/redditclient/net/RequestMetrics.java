@@ -0,0 +1,281 @@
+package com.task.redditclient.net;
+
+import java.util.Locale;
+
+/**
+ * Measurements of a single engine request.
+ * A request may consist of several HTTP exchanges (e.g. token refresh and retry),
+ * their times and byte counts are summed up.
+ * Metrics are collected in the threads executing the request, network code reports
+ * measurements to the metrics bound to the current thread with static methods.
+ */
+public class RequestMetrics {
+    /** Number of nanoseconds in millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** Metrics of the request executed in the current thread. */
+    private static final ThreadLocal<RequestMetrics> sCurrent = new ThreadLocal<>();
+
+    /** Request start time in nanoseconds of {@link System#nanoTime()}. */
+    private final long mStartTime;
+    //! Durations in nanoseconds.
+    private long mTotalTime;
+    private long mConnectTime;
+    private long mFirstByteTime;
+    private long mTransferTime;
+    private long mParseTime;
+    //! Byte counters. Received bytes are counted as they are transferred and after decompression.
+    private long mBytesIn;
+    private long mDecodedBytesIn;
+    private long mBytesOut;
+    /** Status code of the last HTTP exchange, 0 if nothing was sent. */
+    private int mStatusCode;
+    /** Number of HTTP exchanges. */
+    private int mExchangeCount;
+    /** Flag shows either response was served from the cache. */
+    private boolean mFromCache;
+    /** Flag shows either request is failed. */
+    private boolean mFailed;
+
+    /**
+     * Constructor.
+     */
+    private RequestMetrics() {
+        mStartTime = System.nanoTime();
+    }
+
+    /**
+     * Starts measuring request executed in the current thread.
+     * @return metrics bound to the current thread.
+     */
+    static RequestMetrics begin() {
+        RequestMetrics metrics = new RequestMetrics();
+        sCurrent.set(metrics);
+        return metrics;
+    }
+
+    /**
+     * Gets metrics of the request executed in the current thread,
+     * e.g. to bind them to a helper thread fetching part of the request.
+     * @return metrics or null if current thread is not measured.
+     */
+    static RequestMetrics current() {
+        return sCurrent.get();
+    }
+
+    /**
+     * Binds metrics to the current thread, so its measurements are added to the request.
+     * @param metrics Metrics to bind or null to unbind.
+     */
+    static void bind(RequestMetrics metrics) {
+        if (null == metrics) {
+            sCurrent.remove();
+        } else {
+            sCurrent.set(metrics);
+        }
+    }
+
+    /**
+     * Finishes measuring and unbinds metrics from the current thread.
+     * @param failed true if request is failed.
+     */
+    synchronized void end(boolean failed) {
+        mTotalTime = System.nanoTime() - mStartTime;
+        mFailed = failed;
+        if (this == sCurrent.get()) {
+            sCurrent.remove();
+        }
+    }
+
+    /**
+     * Adds time to establish connection, including DNS lookup and TLS handshake.
+     * @param nanos Duration in nanoseconds.
+     */
+    static void addConnectTime(long nanos) {
+        RequestMetrics metrics = sCurrent.get();
+        if (null != metrics) {
+            synchronized (metrics) {
+                metrics.mConnectTime += nanos;
+            }
+        }
+    }
+
+    /**
+     * Adds time from sending request to receiving response status and records the status.
+     * @param nanos Duration in nanoseconds.
+     * @param statusCode HTTP status code.
+     */
+    static void addResponse(long nanos, int statusCode) {
+        RequestMetrics metrics = sCurrent.get();
+        if (null != metrics) {
+            synchronized (metrics) {
+                metrics.mFirstByteTime += nanos;
+                metrics.mStatusCode = statusCode;
+                ++metrics.mExchangeCount;
+            }
+        }
+    }
+
+    /**
+     * Adds time spent reading response body.
+     * @param nanos Duration in nanoseconds.
+     * @param bytes Number of received bytes.
+     * @param decodedBytes Number of bytes after decompression, it is equal to received ones for uncompressed body.
+     */
+    static void addTransfer(long nanos, long bytes, long decodedBytes) {
+        RequestMetrics metrics = sCurrent.get();
+        if (null != metrics) {
+            synchronized (metrics) {
+                metrics.mTransferTime += nanos;
+                metrics.mBytesIn += bytes;
+                metrics.mDecodedBytesIn += decodedBytes;
+            }
+        }
+    }
+
+    /**
+     * Adds time spent parsing response, excluding time of reading it.
+     * @param nanos Duration in nanoseconds.
+     */
+    static void addParseTime(long nanos) {
+        RequestMetrics metrics = sCurrent.get();
+        if (null != metrics) {
+            synchronized (metrics) {
+                metrics.mParseTime += Math.max(0, nanos);
+            }
+        }
+    }
+
+    /**
+     * Adds number of sent request body bytes.
+     * @param bytes Number of sent bytes.
+     */
+    static void addBytesOut(long bytes) {
+        RequestMetrics metrics = sCurrent.get();
+        if (null != metrics) {
+            synchronized (metrics) {
+                metrics.mBytesOut += bytes;
+            }
+        }
+    }
+
+    /**
+     * Marks response as served from the cache.
+     */
+    static void setFromCache() {
+        RequestMetrics metrics = sCurrent.get();
+        if (null != metrics) {
+            synchronized (metrics) {
+                metrics.mFromCache = true;
+            }
+        }
+    }
+
+    /**
+     * Gets total request time, including waiting for token and cache access.
+     * @return time in milliseconds.
+     */
+    public long getTotalTime() {
+        return mTotalTime / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets time to establish connections, it is close to 0 for pooled connections.
+     * @return time in milliseconds.
+     */
+    public long getConnectTime() {
+        return mConnectTime / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets time from sending request to receiving response status.
+     * @return time in milliseconds.
+     */
+    public long getFirstByteTime() {
+        return mFirstByteTime / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets time spent reading response bodies.
+     * @return time in milliseconds.
+     */
+    public long getTransferTime() {
+        return mTransferTime / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets time spent parsing responses.
+     * @return time in milliseconds.
+     */
+    public long getParseTime() {
+        return mParseTime / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets number of received response body bytes, as they are transferred.
+     * @return byte count.
+     */
+    public long getBytesIn() {
+        return mBytesIn;
+    }
+
+    /**
+     * Gets number of received response body bytes after decompression.
+     * @return byte count.
+     */
+    public long getDecodedBytesIn() {
+        return mDecodedBytesIn;
+    }
+
+    /**
+     * Gets number of sent request body bytes.
+     * @return byte count.
+     */
+    public long getBytesOut() {
+        return mBytesOut;
+    }
+
+    /**
+     * Gets status code of the last HTTP exchange.
+     * @return HTTP status code or 0 if nothing was sent.
+     */
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * Gets number of HTTP exchanges.
+     * @return exchange count.
+     */
+    public int getExchangeCount() {
+        return mExchangeCount;
+    }
+
+    /**
+     * Informs either response was served from the cache.
+     * @return true if cached response was used.
+     */
+    public boolean isFromCache() {
+        return mFromCache;
+    }
+
+    /**
+     * Informs either request is failed.
+     * @return true if request is failed.
+     */
+    public boolean isFailed() {
+        return mFailed;
+    }
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%s status %d, total %d ms, connect %d ms, first byte %d ms, transfer %d ms, parse %d ms, in %d B (%d B decoded), out %d B%s",
+                (mFailed ? "failed" : "completed"), mStatusCode, getTotalTime(), getConnectTime(),
+                getFirstByteTime(), getTransferTime(), getParseTime(), mBytesIn, mDecodedBytesIn, mBytesOut,
+                (mFromCache ? ", cached" : ""));
+    }
+}
@@ -8,18 +8,18 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.TextView;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 import com.task.redditclient.R;
 import com.task.redditclient.application.App;
+import com.task.redditclient.application.StartupTrace;
 import com.task.redditclient.net.Engine;
 
-import static com.task.redditclient.net.Engine.Action.GET_TOKEN;
-
 /**
  * Single application activity manages fragments.
  */
-public class ActivityMain extends    Activity
-                          implements DialogInterface.OnClickListener,
-                                     Engine.Listener {
+public class ActivityMain extends Activity {
     /** Progress indicator view */
     private View mProgress;
     /** Progress label */
@@ -68,62 +68,45 @@ public class ActivityMain extends    Activity
      */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.beginSection(StartupTrace.ACTIVITY_CREATE);
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
-
-        mProgress = findViewById(R.id.progressView);
-        mLblProgress = mProgress.findViewById(R.id.lblProgress);
 
-        Engine engine = App.getEngine();
-        if (engine.isAuthenticated()) {
-            if (null == getFragmentManager().findFragmentByTag(FragmentEntryList.class.getName())) {
-                addEntityListFragment();
+        if (null == App.getStorage().getEntries()) {
+            // Token, connection warm-up and the first page (served from the disk cache when possible)
+            // are requested in parallel while layout is inflated. Entry list joins the first page request.
+            Engine engine = App.getEngine();
+            if (!engine.isAuthenticated()) {
+                engine.getToken();
             }
-        } else {
-            showProgress(R.string.authenticating);
-            engine.addListener(this);
-            engine.getToken();
+            engine.preconnect();
+            engine.getEntries(null);
+            StartupTrace.mark(StartupTrace.FIRST_REQUEST);
         }
-    }
 
-    /**
-     * @see Activity#onPause()
-     */
-    @Override
-    protected void onPause() {
-        App.getEngine().removeListener(this);
-        super.onPause();
-    }
+        setContentView(R.layout.activity_main);
 
-    /**
-     * @see DialogInterface.OnClickListener#onClick(DialogInterface, int)
-     */
-    @Override
-    public void onClick(DialogInterface dialog, int which) {
-        finish();
-    }
+        mProgress = findViewById(R.id.progressView);
+        mLblProgress = mProgress.findViewById(R.id.lblProgress);
 
-    /**
-     * @see Engine.Listener#onRequestCompleted(Engine.Action, Object...)
-     */
-    @Override
-    public void onRequestCompleted(Engine.Action action, Object... data) {
-        if (GET_TOKEN == action) {
-            App.getEngine().removeListener(this);
-            hideProgress();
+        if (null == getFragmentManager().findFragmentByTag(FragmentEntryList.class.getName())) {
             addEntityListFragment();
         }
+        StartupTrace.endSection();
     }
 
     /**
-     * @see Engine.Listener#onRequestFailed(Engine.Action, Exception)
+     * Dumps request metrics along with activity state, e.g. by "adb shell dumpsys activity".
+     * @see Activity#dump(String, FileDescriptor, PrintWriter, String[])
      */
     @Override
-    public void onRequestFailed(Engine.Action action, Exception e) {
-        if (GET_TOKEN == action) {
-            App.getEngine().removeListener(this);
-            showMessage(R.string.requestFailed, this);
-        }
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.print(prefix);
+        writer.println("Request metrics:");
+        writer.print(App.getEngine().getMetrics().dump());
+        writer.print(prefix);
+        writer.println("Startup trace:");
+        writer.print(StartupTrace.dump());
     }
 
     /**
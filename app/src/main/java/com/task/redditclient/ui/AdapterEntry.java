@@ -1,5 +1,10 @@
 package com.task.redditclient.ui;
 
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -8,20 +13,37 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
 import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.util.FixedPreloadSizeProvider;
 import com.task.redditclient.R;
 import com.task.redditclient.application.App;
+import com.task.redditclient.application.Common;
+import com.task.redditclient.application.StartupTrace;
+import com.task.redditclient.application.Storage;
 import com.task.redditclient.model.json.Entry;
 import com.task.redditclient.model.json.EntryData;
 
-import java.util.Calendar;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 
 /**
  * Adapter to display Reddit entries.
+ * Thumbnails are loaded in advance at display size, so rows appear with ready images.
+ * Row models are built in the background only for a window around the visible rows,
+ * so memory use does not depend on the number of entries and binding is assignment only.
+ * Rows outside the window are displayed as placeholders until the window is moved to them,
+ * but they report their real stable IDs, which are read without reading entries.
  */
-class AdapterEntry extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+class AdapterEntry extends    RecyclerView.Adapter<RecyclerView.ViewHolder>
+                   implements ListPreloader.PreloadModelProvider<String> {
     /**
      * Listener to receive adapter events.
      */
@@ -43,12 +65,45 @@ class AdapterEntry extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     /** View type identifier for loader item */
     private static final int LOADER = 1;
 
-    /** Entries handled by this adapter */
+    /** Stable ID of loader item */
+    private static final long LOADER_ID = Storage.NO_ID;
+    /** Max number of changed entries to calculate difference for, more changed entries are reloaded */
+    private static final int MAX_DIFF_SIZE = 200;
+
+    /** Payload of row update when only age label is changed */
+    private static final Object PAYLOAD_AGE = new Object();
+
+    /** Options to load thumbnails */
+    private static final RequestOptions THUMBNAIL_OPTIONS = new RequestOptions().centerCrop();
+
+    /** Entries handled by this adapter, null until they are set */
     private List<Entry> mEntries;
+    /** Rows of the window around the visible ones, built in the background */
+    private EntryRow[] mRows = new EntryRow[0];
+    /** Position of the first row of the window */
+    private int mRowsStart = 0;
+    /** Position of the first visible row */
+    private int mFirstVisible = 0;
+    /** Position of the last visible row */
+    private int mLastVisible = 0;
+    /** Task building rows of the moved window, null if it is not executed */
+    private RowsTask mRowsTask;
+    /** Formatter of row labels, it is used in background and main threads */
+    private final EntryRow.Formatter mFormatter = new EntryRow.Formatter();
+    /** Glide request manager to load thumbnails */
+    private final RequestManager mGlide = Glide.with(App.getInstance());
+    /** Thumbnail size in pixels, thumbnails are preloaded exactly at the size they are displayed */
+    private final int mThumbnailSize = App.getInstance().getResources().getDimensionPixelSize(R.dimen.thumbnailSize);
+    /** Handler to update age labels */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    /** Flag shows either adapter is attached to a list and age labels are updated */
+    private boolean mAttached = false;
     /** Listener to receive adapter events */
     private Listener mListener;
     /** Flag to show loader item */
     private boolean mShowLoader = false;
+    /** Generation of entry list, it is incremented on each update to skip outdated diffs */
+    private int mGeneration = 0;
 
     /**
      * Constructor.
@@ -56,15 +111,48 @@ class AdapterEntry extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
      */
     AdapterEntry(Listener listener) {
         mListener = listener;
+        setHasStableIds(true);
     }
 
+    /** Runnable to update age labels when the nearest one becomes outdated */
+    private final Runnable mAgeTicker = new Runnable() {
+        @Override
+        public void run() {
+            updateAges();
+        }
+    };
+
     /**
      * Sets entries to display.
-     * @param entries Entry list.
+     * Changed entries are found in the background and are applied as incremental updates,
+     * so only changed rows are rebound. Entries following unchanged ones keep their positions.
+     * @param entries Entry list returned by {@link Storage#getEntries()}.
      */
     void setEntries(List<Entry> entries) {
-        mEntries = entries;
-        notifyDataSetChanged();
+        ++mGeneration;
+        new DiffTask(mGeneration, mEntries, entries).execute();
+    }
+
+    /**
+     * Sets range of visible rows. Rows of the window around it are built in the background
+     * when the visible rows come close to the window edge.
+     * @param first Position of the first visible row.
+     * @param last Position of the last visible row.
+     */
+    void setViewport(int first, int last) {
+        mFirstVisible = first;
+        mLastVisible = last;
+        ensureRows();
+    }
+
+    /**
+     * Creates scroll listener to preload thumbnails of rows next to the visible ones.
+     * @return scroll listener to be added to the list.
+     */
+    RecyclerView.OnScrollListener createThumbnailPreloader() {
+        return new RecyclerViewPreloader<>(mGlide, this,
+                new FixedPreloadSizeProvider<String>(mThumbnailSize, mThumbnailSize),
+                Common.THUMBNAIL_PRELOAD_COUNT);
     }
 
     /**
@@ -72,7 +160,24 @@ class AdapterEntry extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
      * @param show true to show loader item, false to hide.
      */
     void showLoader(boolean show) {
-        mShowLoader = show;
+        if (mShowLoader != show) {
+            mShowLoader = show;
+            if (null != mEntries) {
+                if (show) {
+                    notifyItemInserted(mEntries.size());
+                } else {
+                    notifyItemRemoved(mEntries.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * @see RecyclerView.Adapter#getItemId(int)
+     */
+    @Override
+    public long getItemId(int position) {
+        return (position >= mEntries.size() ? LOADER_ID : Storage.getId(mEntries, position));
     }
 
     /**
@@ -112,15 +217,507 @@ class AdapterEntry extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     @Override
     public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
         if (position < mEntries.size()) {
-            EntryData entryData = mEntries.get(position).data;
-            if (null != entryData) {
-                ((EntryViewHolder)holder).displayItem(entryData);
+            EntryRow row = getRow(position);
+            if (null != row) {
+                ((EntryViewHolder)holder).displayItem(row);
+            } else {
+                ((EntryViewHolder)holder).displayPlaceholder();
+                ensureRows();
             }
         } else if (null != mListener) {
             mListener.onScrolledToEnd();
         }
     }
 
+    /**
+     * @see RecyclerView.Adapter#onBindViewHolder(RecyclerView.ViewHolder, int, List)
+     */
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position, List<Object> payloads) {
+        EntryRow row = (position < mEntries.size() ? getRow(position) : null);
+        if (null != row && !((EntryViewHolder)holder).mPlaceholder && !payloads.isEmpty() && allAgePayloads(payloads)) {
+            ((EntryViewHolder)holder).displayAge(row);
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    /**
+     * @see ListPreloader.PreloadModelProvider#getPreloadItems(int)
+     */
+    @Override
+    public List<String> getPreloadItems(int position) {
+        if (null == mEntries || position >= mEntries.size()) {
+            return Collections.emptyList();
+        }
+        // Thumbnails of rows beyond the window are preloaded when it is moved to them.
+        EntryRow row = getRow(position);
+        String thumbnail = (null == row ? null : row.data.thumbnail);
+        return (null == thumbnail ? Collections.<String>emptyList() : Collections.singletonList(thumbnail));
+    }
+
+    /**
+     * @see ListPreloader.PreloadModelProvider#getPreloadRequestBuilder(Object)
+     */
+    @Override
+    public RequestBuilder getPreloadRequestBuilder(String thumbnail) {
+        return loadThumbnail(thumbnail);
+    }
+
+    /**
+     * @see RecyclerView.Adapter#onAttachedToRecyclerView(RecyclerView)
+     */
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        mAttached = true;
+        updateAges();
+    }
+
+    /**
+     * @see RecyclerView.Adapter#onDetachedFromRecyclerView(RecyclerView)
+     */
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        mAttached = false;
+        mHandler.removeCallbacks(mAgeTicker);
+    }
+
+    /**
+     * Gets row model built in the background.
+     * @param position Row position.
+     * @return row model or null if row is out of the window.
+     */
+    private EntryRow getRow(int position) {
+        int index = position - mRowsStart;
+        return (index >= 0 && index < mRows.length ? mRows[index] : null);
+    }
+
+    /**
+     * Starts building rows of the window around the visible ones in the background
+     * if the visible rows are close to the edge of the built window.
+     */
+    private void ensureRows() {
+        if (null == mEntries || null != mRowsTask) {
+            return;
+        }
+        int margin = Common.ROW_WINDOW / 2;
+        int rowsEnd = mRowsStart + mRows.length;
+        if ((mRowsStart > 0 && mFirstVisible - margin < mRowsStart)
+                || (rowsEnd < mEntries.size() && mLastVisible + margin >= rowsEnd)) {
+            mRowsTask = new RowsTask(mEntries, mRows, mRowsStart, mFirstVisible, mLastVisible);
+            mRowsTask.execute();
+        }
+    }
+
+    /**
+     * Builds rows of entries in the given range. Called in the background, since entries may be read from disk.
+     * Rows after the reused ones are reused too if they are moved with the same content,
+     * so displayed age labels stay updated by the age ticker.
+     * @param entries Entry list.
+     * @param start Position of the first row.
+     * @param end Position after the last row.
+     * @param oldRows Built rows to reuse.
+     * @param oldStart Position of the first row to reuse.
+     * @param oldEnd Position after the last row to reuse, rows after it are changed.
+     * @return array of rows.
+     */
+    private EntryRow[] buildRows(List<Entry> entries, int start, int end, EntryRow[] oldRows, int oldStart, int oldEnd) {
+        HashMap<Long, EntryRow> movedRows = new HashMap<>();
+        for (int i = Math.max(0, oldEnd - oldStart); i < oldRows.length; ++i) {
+            movedRows.put(oldRows[i].id, oldRows[i]);
+        }
+
+        EntryRow[] rows = new EntryRow[Math.max(0, end - start)];
+        long now = System.currentTimeMillis() / 1000;
+        for (int position = start; position < end; ++position) {
+            EntryRow row = null;
+            if (position >= oldStart && position < oldEnd) {
+                row = oldRows[position - oldStart];
+            }
+            if (null == row) {
+                EntryData entryData = entries.get(position).data;
+                if (null == entryData) {
+                    entryData = new EntryData();
+                }
+                long id = Storage.getId(entries, position);
+                row = movedRows.get(id);
+                if (null == row || !isSameContent(row.data, entryData)) {
+                    row = new EntryRow(id, entryData, mFormatter, now);
+                }
+            }
+            rows[position - start] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * Gets position of the first row of the window around the visible ones.
+     * @param first Position of the first visible row.
+     * @return row position.
+     */
+    private static int windowStart(int first) {
+        return Math.max(0, first - Common.ROW_WINDOW);
+    }
+
+    /**
+     * Gets position after the last row of the window around the visible ones.
+     * @param entries Entry list.
+     * @param last Position of the last visible row.
+     * @return row position.
+     */
+    private static int windowEnd(List<Entry> entries, int last) {
+        return Math.max(0, Math.min(entries.size(), last + 1 + Common.ROW_WINDOW));
+    }
+
+    /**
+     * Updates outdated age labels of the window rows and schedules the next update
+     * for the time when the nearest label becomes outdated. Other rows get actual age when they are built.
+     */
+    private void updateAges() {
+        mHandler.removeCallbacks(mAgeTicker);
+        if (!mAttached || 0 == mRows.length) {
+            return;
+        }
+
+        long now = System.currentTimeMillis() / 1000;
+        long nextUpdate = Long.MAX_VALUE;
+        for (int i = 0; i < mRows.length; ++i) {
+            EntryRow row = mRows[i];
+            if (row.updateAge(mFormatter, now)) {
+                notifyItemChanged(mRowsStart + i, PAYLOAD_AGE);
+            }
+            nextUpdate = Math.min(nextUpdate, row.getNextAgeUpdate());
+        }
+        mHandler.postDelayed(mAgeTicker, Math.max(1, nextUpdate - now) * 1000);
+    }
+
+    /**
+     * Creates request to load thumbnail.
+     * Displayed and preloaded thumbnails share the same options, so preloaded ones are taken from memory cache.
+     * @param thumbnail Thumbnail URL.
+     * @return request builder.
+     */
+    private RequestBuilder<?> loadThumbnail(String thumbnail) {
+        return mGlide.load(thumbnail).apply(THUMBNAIL_OPTIONS);
+    }
+
+    /**
+     * Preloads thumbnails, e.g. of rows which are added to the end of list, before they are displayed.
+     * @param thumbnails Thumbnail URLs.
+     */
+    private void preloadThumbnails(List<String> thumbnails) {
+        for (String thumbnail : thumbnails) {
+            loadThumbnail(thumbnail).preload(mThumbnailSize, mThumbnailSize);
+        }
+    }
+
+    /**
+     * Informs either all payloads are age updates.
+     * @param payloads Payloads of row update.
+     * @return true if only age label should be updated.
+     */
+    private static boolean allAgePayloads(List<Object> payloads) {
+        for (Object payload : payloads) {
+            if (PAYLOAD_AGE != payload) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Informs either two entries have the same displayed content.
+     * @param lhs The first entry.
+     * @param rhs The second entry.
+     * @return true if content is the same.
+     */
+    private static boolean isSameContent(EntryData lhs, EntryData rhs) {
+        return lhs.created_utc == rhs.created_utc
+                && lhs.num_comments == rhs.num_comments
+                && equals(lhs.title, rhs.title)
+                && equals(lhs.author, rhs.author)
+                && equals(lhs.thumbnail, rhs.thumbnail);
+    }
+
+    /**
+     * Compares strings which may be null.
+     * @param lhs The first string.
+     * @param rhs The second string.
+     * @return true if strings are equal.
+     */
+    private static boolean equals(String lhs, String rhs) {
+        return (null == lhs ? null == rhs : lhs.equals(rhs));
+    }
+
+    /**
+     * Task to find changed entries and calculate difference with displayed ones in the background.
+     * Unchanged leading entries are skipped, so appending a page is not compared entry by entry.
+     * Rows of the window around the visible ones are built for new entries before they are displayed.
+     */
+    private class DiffTask extends AsyncTask<Void, Void, DiffUtil.DiffResult> {
+        /** Generation of entry list this diff is calculated for */
+        private final int mDiffGeneration;
+        /** Currently displayed entries or null */
+        private final List<Entry> mOldEntries;
+        /** Entries to display */
+        private final List<Entry> mNewEntries;
+        /** Rows of currently displayed entries */
+        private final EntryRow[] mOldRows;
+        /** Position of the first row of currently displayed entries */
+        private final int mOldRowsStart;
+        /** Position of the first visible row */
+        private final int mFirst;
+        /** Position of the last visible row */
+        private final int mLast;
+        /** Number of unchanged leading entries, -1 if all entries should be reloaded */
+        private int mUnchanged = -1;
+        /** Rows of the window of new entries */
+        private EntryRow[] mNewRows;
+        /** Flags of rows of the window which are built again, they are rebound since their views may show other rows */
+        private boolean[] mBuiltRows;
+        /** Thumbnails of appended entries to preload */
+        private final ArrayList<String> mAppendedThumbnails = new ArrayList<>();
+
+        /**
+         * Constructor.
+         * @param generation Generation of entry list.
+         * @param oldEntries Currently displayed entries or null.
+         * @param entries Entries to display.
+         */
+        DiffTask(int generation, List<Entry> oldEntries, List<Entry> entries) {
+            mDiffGeneration = generation;
+            mOldEntries = oldEntries;
+            mNewEntries = entries;
+            mOldRows = mRows;
+            mOldRowsStart = mRowsStart;
+            mFirst = mFirstVisible;
+            mLast = mLastVisible;
+        }
+
+        /**
+         * @see AsyncTask#doInBackground(Object[])
+         */
+        @Override
+        protected DiffUtil.DiffResult doInBackground(Void... params) {
+            DiffUtil.DiffResult diffResult = calculateDiff();
+
+            // Rows of unchanged entries keep their positions.
+            int reusedEnd = Math.min(mOldRowsStart + mOldRows.length, Math.max(0, mUnchanged));
+            mNewRows = buildRows(mNewEntries, windowStart(mFirst), windowEnd(mNewEntries, mLast),
+                    mOldRows, mOldRowsStart, reusedEnd);
+            HashSet<EntryRow> oldRows = new HashSet<>(Arrays.asList(mOldRows));
+            mBuiltRows = new boolean[mNewRows.length];
+            for (int i = 0; i < mNewRows.length; ++i) {
+                mBuiltRows[i] = !oldRows.contains(mNewRows[i]);
+            }
+
+            int appendedStart = (null == mOldEntries ? 0 : mOldEntries.size());
+            if (null == mOldEntries || (mUnchanged == appendedStart && null == diffResult)) {
+                int end = Math.min(mNewEntries.size(), appendedStart + Common.THUMBNAIL_PRELOAD_COUNT);
+                for (int i = appendedStart; i < end; ++i) {
+                    EntryData entryData = mNewEntries.get(i).data;
+                    if (null != entryData && null != entryData.thumbnail) {
+                        mAppendedThumbnails.add(entryData.thumbnail);
+                    }
+                }
+            }
+            return diffResult;
+        }
+
+        /**
+         * @see AsyncTask#onPostExecute(Object)
+         */
+        @Override
+        protected void onPostExecute(DiffUtil.DiffResult diffResult) {
+            if (mDiffGeneration != mGeneration || mOldEntries != mEntries) {
+                return;
+            }
+
+            mEntries = mNewEntries;
+            mRows = mNewRows;
+            mRowsStart = windowStart(mFirst);
+            preloadThumbnails(mAppendedThumbnails);
+            if (mUnchanged < 0) {
+                notifyDataSetChanged();
+            } else if (null == diffResult) {
+                int oldSize = mOldEntries.size();
+                if (mEntries.size() > oldSize) {
+                    notifyItemRangeInserted(oldSize, mEntries.size() - oldSize);
+                }
+            } else {
+                final int offset = mUnchanged;
+                diffResult.dispatchUpdatesTo(new ListUpdateCallback() {
+                    @Override
+                    public void onInserted(int position, int count) {
+                        notifyItemRangeInserted(offset + position, count);
+                    }
+
+                    @Override
+                    public void onRemoved(int position, int count) {
+                        notifyItemRangeRemoved(offset + position, count);
+                    }
+
+                    @Override
+                    public void onMoved(int fromPosition, int toPosition) {
+                        notifyItemMoved(offset + fromPosition, offset + toPosition);
+                    }
+
+                    @Override
+                    public void onChanged(int position, int count, Object payload) {
+                        notifyItemRangeChanged(offset + position, count, payload);
+                    }
+                });
+            }
+            if (mUnchanged >= 0) {
+                // Rows displayed as placeholders or moved from out of the previous window are bound again.
+                // Reused rows keep their age labels, they are updated by the age ticker.
+                int i = 0;
+                while (i < mBuiltRows.length) {
+                    int end = i;
+                    while (end < mBuiltRows.length && mBuiltRows[end]) {
+                        ++end;
+                    }
+                    if (end > i) {
+                        notifyItemRangeChanged(mRowsStart + i, end - i);
+                        i = end;
+                    } else {
+                        ++i;
+                    }
+                }
+            }
+            if (!mEntries.isEmpty()) {
+                StartupTrace.mark(StartupTrace.FIRST_ENTRY);
+            }
+            updateAges();
+            ensureRows();
+        }
+
+        /**
+         * Calculates difference between entries following the unchanged ones.
+         * @return difference or null if entries are appended or should be reloaded.
+         */
+        private DiffUtil.DiffResult calculateDiff() {
+            if (null == mOldEntries) {
+                return null;
+            }
+            mUnchanged = Storage.countCommonPrefix(mOldEntries, mNewEntries);
+            int oldCount = mOldEntries.size() - mUnchanged;
+            int newCount = mNewEntries.size() - mUnchanged;
+            if (0 == oldCount) {
+                // Entries are appended.
+                return null;
+            }
+            if (oldCount > MAX_DIFF_SIZE || newCount > MAX_DIFF_SIZE) {
+                mUnchanged = -1;
+                return null;
+            }
+            final EntryData[] oldData = getChanged(mOldEntries, oldCount);
+            final EntryData[] newData = getChanged(mNewEntries, newCount);
+
+            return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldData.length;
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return newData.length;
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                    return Storage.getId(mOldEntries, mUnchanged + oldPosition)
+                            == Storage.getId(mNewEntries, mUnchanged + newPosition);
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    return isSameContent(oldData[oldPosition], newData[newPosition]);
+                }
+            }, false);
+        }
+
+        /**
+         * Gets data of entries following the unchanged ones.
+         * @param entries Entry list.
+         * @param count Number of entries following the unchanged ones.
+         * @return array of entry data.
+         */
+        private EntryData[] getChanged(List<Entry> entries, int count) {
+            EntryData[] data = new EntryData[count];
+            for (int i = 0; i < count; ++i) {
+                EntryData entryData = entries.get(mUnchanged + i).data;
+                data[i] = (null == entryData ? new EntryData() : entryData);
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Task to build rows of the window moved to the visible ones in the background.
+     * Rows of the previous window are reused.
+     */
+    private class RowsTask extends AsyncTask<Void, Void, EntryRow[]> {
+        /** Entries to build rows of */
+        private final List<Entry> mTaskEntries;
+        /** Rows of the previous window */
+        private final EntryRow[] mOldRows;
+        /** Position of the first row of the previous window */
+        private final int mOldStart;
+        /** Position of the first row of the window */
+        private final int mStart;
+        /** Position after the last row of the window */
+        private final int mEnd;
+
+        /**
+         * Constructor.
+         * @param entries Entries to build rows of.
+         * @param oldRows Rows of the previous window.
+         * @param oldStart Position of the first row of the previous window.
+         * @param first Position of the first visible row.
+         * @param last Position of the last visible row.
+         */
+        RowsTask(List<Entry> entries, EntryRow[] oldRows, int oldStart, int first, int last) {
+            mTaskEntries = entries;
+            mOldRows = oldRows;
+            mOldStart = oldStart;
+            mStart = windowStart(first);
+            mEnd = windowEnd(entries, last);
+        }
+
+        /**
+         * @see AsyncTask#doInBackground(Object[])
+         */
+        @Override
+        protected EntryRow[] doInBackground(Void... params) {
+            return buildRows(mTaskEntries, mStart, mEnd, mOldRows, mOldStart, mOldStart + mOldRows.length);
+        }
+
+        /**
+         * @see AsyncTask#onPostExecute(Object)
+         */
+        @Override
+        protected void onPostExecute(EntryRow[] rows) {
+            mRowsTask = null;
+            if (mTaskEntries == mEntries && mOldRows == mRows) {
+                mRows = rows;
+                mRowsStart = mStart;
+                // Rows which were out of the previous window may be displayed as placeholders.
+                int oldEnd = mOldStart + mOldRows.length;
+                if (mStart < mOldStart) {
+                    notifyItemRangeChanged(mStart, Math.min(mEnd, mOldStart) - mStart);
+                }
+                if (mEnd > oldEnd) {
+                    int start = Math.max(mStart, oldEnd);
+                    notifyItemRangeChanged(start, mEnd - start);
+                }
+                updateAges();
+            }
+            ensureRows();
+        }
+    }
+
     /**
      * View holder to display regular entry.
      */
@@ -133,6 +730,8 @@ class AdapterEntry extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         private final TextView  mLblAuthor;
         private final TextView  mLblCommentNum;
         private final TextView  mLblTime;
+        /** Flag shows either placeholder is displayed instead of row */
+        private boolean mPlaceholder = true;
 
         /**
          * Constructor required by RecyclerView.ViewHolder
@@ -151,20 +750,40 @@ class AdapterEntry extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
         /**
          * Displays single item.
-         * @param item Entry to display.
+         * @param row Row to display.
          */
-        private void displayItem(EntryData item) {
-            App app = App.getInstance();
-            Locale locale = Locale.getDefault();
-
+        private void displayItem(EntryRow row) {
+            mPlaceholder = false;
+            EntryData item = row.data;
             mContainerThumbnail.setTag(item.thumbnail);
-            Glide.with(app).load(item.thumbnail).apply(new RequestOptions().centerCrop()).into(mImgThumbnail);
+            loadThumbnail(item.thumbnail).into(mImgThumbnail);
 
             mLblTitle.setText(item.title);
-            mLblAuthor.setText(String.format(locale, app.getString(R.string.author), item.author));
-            mLblCommentNum.setText(String.format(locale, app.getString(R.string.numComments), item.num_comments));
-            long timeDiff = ((Calendar.getInstance().getTimeInMillis() / 1000) - item.created_utc) / 3600;
-            mLblTime.setText(String.format(locale, app.getString(R.string.hoursAgo), timeDiff));
+            mLblAuthor.setText(row.authorLabel);
+            mLblCommentNum.setText(row.commentsLabel);
+            mLblTime.setText(row.ageLabel);
+        }
+
+        /**
+         * Displays placeholder of item which row is not built yet.
+         */
+        private void displayPlaceholder() {
+            mPlaceholder = true;
+            mContainerThumbnail.setTag(null);
+            mGlide.clear(mImgThumbnail);
+
+            mLblTitle.setText(null);
+            mLblAuthor.setText(null);
+            mLblCommentNum.setText(null);
+            mLblTime.setText(null);
+        }
+
+        /**
+         * Displays age of item.
+         * @param row Row to display.
+         */
+        private void displayAge(EntryRow row) {
+            mLblTime.setText(row.ageLabel);
         }
 
         /**
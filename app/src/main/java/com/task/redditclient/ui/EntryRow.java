@@ -0,0 +1,132 @@
+package com.task.redditclient.ui;
+
+import com.task.redditclient.R;
+import com.task.redditclient.application.App;
+import com.task.redditclient.model.json.EntryData;
+
+import java.util.Locale;
+
+/**
+ * Ready to display model of entry row.
+ * Rows are created in the background, so binding a row to views is assignment only.
+ */
+class EntryRow {
+    /** Number of seconds in hour */
+    private static final long HOUR = 3600;
+
+    /** Stable row ID */
+    final long id;
+    /** Source entry data */
+    final EntryData data;
+    /** Formatted author label */
+    final String authorLabel;
+    /** Formatted number of comments label */
+    final String commentsLabel;
+    /** Entry age in hours, updated by age ticker in the main thread */
+    long ageHours;
+    /** Formatted entry age label, updated by age ticker in the main thread */
+    String ageLabel;
+
+    /**
+     * Constructor.
+     * @param id Stable row ID.
+     * @param data Source entry data.
+     * @param formatter Formatter of labels.
+     * @param now Current UTC time in seconds.
+     */
+    EntryRow(long id, EntryData data, Formatter formatter, long now) {
+        this.id = id;
+        this.data = data;
+        authorLabel = formatter.formatAuthor(data.author);
+        commentsLabel = formatter.formatComments(data.num_comments);
+        updateAge(formatter, now);
+    }
+
+    /**
+     * Updates age label.
+     * @param formatter Formatter of labels.
+     * @param now Current UTC time in seconds.
+     * @return true if label is changed.
+     */
+    boolean updateAge(Formatter formatter, long now) {
+        long hours = Math.max(0, (now - data.created_utc) / HOUR);
+        if (null != ageLabel && hours == ageHours) {
+            return false;
+        }
+        ageHours = hours;
+        ageLabel = formatter.formatHoursAgo(hours);
+        return true;
+    }
+
+    /**
+     * Gets time when age label should be updated next time.
+     * @return UTC time in seconds.
+     */
+    long getNextAgeUpdate() {
+        return data.created_utc + (ageHours + 1) * HOUR;
+    }
+
+    /**
+     * Formatter of row labels.
+     * Label templates are loaded once, age labels are cached per number of hours.
+     */
+    static class Formatter {
+        /** Max number of cached age labels */
+        private static final int MAX_CACHED_HOURS = 24 * 7;
+
+        /** Locale to format labels */
+        private final Locale mLocale;
+        //! Label templates.
+        private final String mAuthorFormat;
+        private final String mCommentsFormat;
+        private final String mHoursAgoFormat;
+        /** Cached age labels, index is number of hours */
+        private final String[] mHoursAgoLabels = new String[MAX_CACHED_HOURS];
+
+        /**
+         * Constructor.
+         */
+        Formatter() {
+            App app = App.getInstance();
+            mLocale = Locale.getDefault();
+            mAuthorFormat = app.getString(R.string.author);
+            mCommentsFormat = app.getString(R.string.numComments);
+            mHoursAgoFormat = app.getString(R.string.hoursAgo);
+        }
+
+        /**
+         * Formats author label.
+         * @param author Author name.
+         * @return formatted label.
+         */
+        String formatAuthor(String author) {
+            return String.format(mLocale, mAuthorFormat, author);
+        }
+
+        /**
+         * Formats number of comments label.
+         * @param numComments Number of comments.
+         * @return formatted label.
+         */
+        String formatComments(int numComments) {
+            return String.format(mLocale, mCommentsFormat, numComments);
+        }
+
+        /**
+         * Formats age label.
+         * @param hours Entry age in hours.
+         * @return formatted label.
+         */
+        synchronized String formatHoursAgo(long hours) {
+            if (hours >= MAX_CACHED_HOURS) {
+                return String.format(mLocale, mHoursAgoFormat, hours);
+            }
+            String label = mHoursAgoLabels[(int)hours];
+            if (null == label) {
+                label = String.format(mLocale, mHoursAgoFormat, hours);
+                mHoursAgoLabels[(int)hours] = label;
+            }
+            return label;
+        }
+    }
+}
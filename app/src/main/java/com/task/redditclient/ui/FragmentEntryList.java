@@ -2,6 +2,7 @@ package com.task.redditclient.ui;
 
 import android.app.Fragment;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -12,6 +13,7 @@ import android.view.ViewGroup;
 import com.task.redditclient.R;
 import com.task.redditclient.application.App;
 import com.task.redditclient.application.Common;
+import com.task.redditclient.application.StartupTrace;
 import com.task.redditclient.model.json.Entry;
 import com.task.redditclient.net.Engine;
 
@@ -40,15 +42,20 @@ public class FragmentEntryList extends    Fragment
             return null;
         }
 
+        StartupTrace.beginSection(StartupTrace.LIST_INFLATE);
         View view = inflater.inflate(R.layout.fragment_entry_list, container, false);
 
         RecyclerView list = view.findViewById(R.id.listEntries);
-        list.setLayoutManager(new LinearLayoutManager(getActivity()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+        list.setLayoutManager(layoutManager);
         mAdapter = new AdapterEntry(this);
         list.setAdapter(mAdapter);
+        list.addOnScrollListener(new PrefetchScrollListener(layoutManager));
+        list.addOnScrollListener(mAdapter.createThumbnailPreloader());
 
         mSwipeRefreshLayout = view.findViewById(R.id.swiperefresh);
         mSwipeRefreshLayout.setOnRefreshListener(this);
+        StartupTrace.endSection();
 
         return view;
     }
@@ -69,7 +76,7 @@ public class FragmentEntryList extends    Fragment
             engine.getEntries(null);
         } else {
             mAdapter.setEntries(entries);
-            mAdapter.showLoader(entries.size() < Common.MAX_ENTRIES);
+            mAdapter.showLoader(null != App.getStorage().getAfter());
         }
     }
 
@@ -116,9 +123,10 @@ public class FragmentEntryList extends    Fragment
     @Override
     public void onRequestCompleted(Engine.Action action, Object... data) {
         if (GET_ENTRIES == action) {
+            StartupTrace.mark(StartupTrace.FIRST_RESPONSE);
             List<Entry> entries = App.getStorage().getEntries();
             mSwipeRefreshLayout.setRefreshing(false);
-            mAdapter.showLoader(entries.size() < Common.MAX_ENTRIES);
+            mAdapter.showLoader(null != App.getStorage().getAfter());
             mAdapter.setEntries(entries);
         }
     }
@@ -134,4 +142,80 @@ public class FragmentEntryList extends    Fragment
             ((ActivityMain)getActivity()).showMessage(R.string.requestFailed, null);
         }
     }
+
+    /**
+     * Requests the next page when the last visible entry is close enough to the end of list.
+     * Prefetch distance grows with scroll velocity, so steady scrolling does not reach the loader item.
+     * Visible range is reported to the storage to keep in memory only entries around it
+     * and to the adapter to build rows around it in advance.
+     */
+    private class PrefetchScrollListener extends RecyclerView.OnScrollListener {
+        /** Layout manager of the list. */
+        private final LinearLayoutManager mLayoutManager;
+        /** Last visible position at the previous scroll event. */
+        private int mLastPosition = RecyclerView.NO_POSITION;
+        /** Time of the previous scroll event. */
+        private long mLastTime;
+        /** Smoothed scroll velocity in entries per second. */
+        private float mVelocity;
+
+        /**
+         * Constructor.
+         * @param layoutManager Layout manager of the list.
+         */
+        PrefetchScrollListener(LinearLayoutManager layoutManager) {
+            mLayoutManager = layoutManager;
+        }
+
+        /**
+         * @see RecyclerView.OnScrollListener#onScrollStateChanged(RecyclerView, int)
+         */
+        @Override
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            if (RecyclerView.SCROLL_STATE_IDLE == newState) {
+                mVelocity = 0;
+                App.getEngine().setScrollRate(0);
+            }
+        }
+
+        /**
+         * @see RecyclerView.OnScrollListener#onScrolled(RecyclerView, int, int)
+         */
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            int position = mLayoutManager.findLastVisibleItemPosition();
+            if (RecyclerView.NO_POSITION == position) {
+                return;
+            }
+
+            long now = SystemClock.uptimeMillis();
+            if (RecyclerView.NO_POSITION != mLastPosition && now > mLastTime) {
+                float velocity = Math.max(0, position - mLastPosition) * 1000f / (now - mLastTime);
+                mVelocity = (mVelocity + velocity) / 2;
+                App.getEngine().setScrollRate(mVelocity);
+            }
+            mLastPosition = position;
+            mLastTime = now;
+            int first = mLayoutManager.findFirstVisibleItemPosition();
+            App.getStorage().setViewport(first, position);
+            mAdapter.setViewport(first, position);
+
+            if (dy <= 0) {
+                return;
+            }
+
+            List<Entry> entries = App.getStorage().getEntries();
+            String after = App.getStorage().getAfter();
+            if (null == entries || null == after) {
+                return;
+            }
+
+            int distance = Math.min(Common.MAX_PREFETCH_DISTANCE,
+                    Common.PREFETCH_DISTANCE + (int)(mVelocity * Common.PREFETCH_TIME / 1000));
+            Engine engine = App.getEngine();
+            if (position >= entries.size() - distance && !engine.isActionExecuted(GET_ENTRIES)) {
+                engine.getEntries(after, Engine.Priority.PREFETCH);
+            }
+        }
+    }
 }
@@ -0,0 +1,83 @@
+package com.task.redditclient.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Synthetic "Get entries" responses.
+ * Listings of different size are cut from the page of 100 entries generated by {@link ListingGenerator}.
+ * The page has the fields of a /top page, but its text is random words, so parse times
+ * are representative while sizes and compression ratio only approximate real responses.
+ */
+final class ListingFixtures {
+    /** Charset of responses. */
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Resource name of generated page of 100 entries. */
+    private static final String TOP_100 = "/top_100.json";
+
+    /**
+     * Private constructor, class has static methods only.
+     */
+    private ListingFixtures() {
+    }
+
+    /**
+     * Builds "Get entries" response body with given number of entries.
+     * @param childCount Number of entries, from 1 to 100.
+     * @return response body.
+     * @throws IOException if generated response can't be read.
+     */
+    static byte[] topListing(int childCount) throws IOException {
+        JsonObject listing = readResource(TOP_100);
+        JsonObject data = listing.getAsJsonObject("data");
+        JsonArray children = data.getAsJsonArray("children");
+        if (childCount < 1 || childCount > children.size()) {
+            throw new IllegalArgumentException("Unsupported number of entries " + childCount);
+        }
+
+        JsonArray cut = new JsonArray();
+        for (int i = 0; i < childCount; ++i) {
+            cut.add(children.get(i));
+        }
+        data.add("children", cut);
+        data.addProperty("after", cut.get(childCount - 1).getAsJsonObject().getAsJsonObject("data").get("name").getAsString());
+        data.addProperty("dist", childCount);
+        return listing.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Gets entries of the generated page.
+     * @return array of 100 listing children.
+     * @throws IOException if generated response can't be read.
+     */
+    static JsonArray topChildren() throws IOException {
+        return readResource(TOP_100).getAsJsonObject("data").getAsJsonArray("children");
+    }
+
+    /**
+     * Reads JSON object from resource.
+     * @param name Resource name.
+     * @return JSON object.
+     * @throws IOException if resource can't be read.
+     */
+    private static JsonObject readResource(String name) throws IOException {
+        InputStream inStream = ListingFixtures.class.getResourceAsStream(name);
+        if (null == inStream) {
+            throw new IOException("Missing resource " + name);
+        }
+        Reader reader = new InputStreamReader(inStream, UTF_8);
+        try {
+            return new JsonParser().parse(reader).getAsJsonObject();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.task.redditclient.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates synthetic "Get entries" response used by benchmarks, see {@link ListingFixtures}.
+ * Entries have the fields and value formats of a /top page of image links,
+ * titles, names and hashes are random, so sizes and compression ratio only approximate real responses.
+ * Output is the same for the same seed.
+ * Run with "./gradlew :benchmark:generateListing" to rewrite src/jmh/resources/top_100.json.
+ */
+public final class ListingGenerator {
+    /** Default output file, relative to the benchmark project. */
+    private static final String DEFAULT_OUTPUT = "src/jmh/resources/top_100.json";
+    /** Seed of the committed fixture. */
+    private static final long SEED = 20171017;
+    /** Number of generated entries. */
+    private static final int ENTRY_COUNT = 100;
+
+    /** Start of the day of generated entries, in seconds. */
+    private static final long DAY_START = 1508112000;
+    /** Number of seconds in a day. */
+    private static final int SECONDS_PER_DAY = 86400;
+    /** Difference of "created" and "created_utc" fields, in seconds. */
+    private static final int CREATED_OFFSET = 28800;
+
+    //! Alphabets of generated identifiers.
+    private static final String BASE36 = "0123456789abcdefghijklmnopqrstuvwxyz";
+    private static final String HEX = "0123456789abcdef";
+    private static final String BASE64_URL = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    /** Widths of preview resolutions. */
+    private static final int[] PREVIEW_WIDTHS = {108, 216, 320, 640, 960, 1080};
+    /** Sizes of source images, pairs of width and height. */
+    private static final int[][] SOURCE_SIZES = {{3024, 4032}, {4032, 3024}, {1080, 1350}, {1920, 1080}, {2048, 2048}};
+
+    /** Subreddits of entries. */
+    private static final String[] SUBREDDITS = {"pics", "funny", "aww", "todayilearned", "movies", "news",
+            "mildlyinteresting", "space", "interestingasfuck", "nextfuckinglevel", "gaming", "EarthPorn",
+            "food", "OldSchoolCool", "videos"};
+    /** Number of authors, each one posts several entries. */
+    private static final int AUTHOR_COUNT = 40;
+
+    /** Words of generated titles. */
+    private static final String[] WORDS = {"a", "about", "after", "again", "all", "almost", "always", "an", "and",
+            "animal", "anniversary", "apartment", "around", "as", "at", "baby", "back", "beach", "before", "best",
+            "bike", "bird", "birthday", "boat", "book", "bridge", "brother", "built", "but", "by", "cake", "car",
+            "castle", "cat", "caught", "city", "coffee", "cold", "could", "couldn't", "dad", "daughter", "day",
+            "decided", "dog", "door", "during", "every", "ever", "everyone", "family", "father", "finally", "first",
+            "fish", "for", "forest", "found", "friend", "from", "garden", "got", "grandma", "grandpa", "had", "has",
+            "have", "he", "her", "his", "home", "horse", "house", "how", "hours", "I", "ice", "in", "into", "is",
+            "it", "just", "kitchen", "lake", "last", "left", "light", "little", "made", "man", "me", "moon",
+            "morning", "mountain", "my", "neighbor", "never", "new", "night", "not", "of", "off", "old", "on",
+            "only", "our", "out", "painted", "park", "people", "photo", "picture", "puppy", "rain", "record",
+            "river", "road", "school", "she", "sister", "sky", "snow", "so", "son", "spent", "station", "still",
+            "street", "summer", "sunset", "than", "that", "the", "their", "this", "time", "to", "today", "took",
+            "tree", "under", "up", "view", "was", "water", "we", "week", "what", "when", "while", "who", "wife",
+            "window", "winter", "with", "woman", "world", "years", "yesterday", "you", "your"};
+
+    /** Random numbers of generated values. */
+    private final Random mRandom;
+    /** Generated IDs of {@link #SUBREDDITS}. */
+    private final String[] mSubredditIds;
+
+    /**
+     * Constructor.
+     * @param seed Random seed.
+     */
+    private ListingGenerator(long seed) {
+        mRandom = new Random(seed);
+        mSubredditIds = new String[SUBREDDITS.length];
+        for (int i = 0; i < mSubredditIds.length; ++i) {
+            mSubredditIds[i] = "t5_" + randomString(BASE36, 5);
+        }
+    }
+
+    /**
+     * Writes generated listing.
+     * @param args Output file, {@link #DEFAULT_OUTPUT} if it is not given.
+     * @throws IOException if file can't be written.
+     */
+    public static void main(String[] args) throws IOException {
+        File output = new File(args.length > 0 ? args[0] : DEFAULT_OUTPUT);
+        byte[] body = new ListingGenerator(SEED).listing(ENTRY_COUNT).toString().getBytes(ListingFixtures.UTF_8);
+        OutputStream outStream = new FileOutputStream(output);
+        try {
+            outStream.write(body);
+        } finally {
+            outStream.close();
+        }
+        System.out.println("Written " + body.length + " bytes to " + output);
+    }
+
+    /**
+     * Generates listing ordered by score.
+     * @param count Number of entries.
+     * @return listing object.
+     */
+    private JsonObject listing(int count) {
+        List<JsonObject> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            entries.add(entry());
+        }
+        Collections.sort(entries, new Comparator<JsonObject>() {
+            @Override
+            public int compare(JsonObject left, JsonObject right) {
+                int leftScore = left.get("score").getAsInt();
+                int rightScore = right.get("score").getAsInt();
+                return (leftScore > rightScore ? -1 : (leftScore == rightScore ? 0 : 1));
+            }
+        });
+
+        JsonArray children = new JsonArray();
+        for (JsonObject data : entries) {
+            JsonObject child = new JsonObject();
+            child.addProperty("kind", "t3");
+            child.add("data", data);
+            children.add(child);
+        }
+
+        JsonObject data = new JsonObject();
+        data.addProperty("after", entries.get(count - 1).get("name").getAsString());
+        data.addProperty("dist", count);
+        data.addProperty("modhash", "");
+        data.addProperty("whitelist_status", "all_ads");
+        data.add("children", children);
+        data.add("before", JsonNull.INSTANCE);
+
+        JsonObject listing = new JsonObject();
+        listing.addProperty("kind", "Listing");
+        listing.add("data", data);
+        return listing;
+    }
+
+    /**
+     * Generates data of an image link.
+     * @return entry data.
+     */
+    private JsonObject entry() {
+        int subreddit = mRandom.nextInt(SUBREDDITS.length);
+        String id = randomString(BASE36, 6);
+        String image = randomString(BASE36, 13);
+        String title = title();
+        int score = 5000 + mRandom.nextInt(95000);
+        long createdUtc = DAY_START + mRandom.nextInt(SECONDS_PER_DAY);
+        String author = (mRandom.nextInt(3) > 0 ? "user_" : "throwaway_") + mRandom.nextInt(AUTHOR_COUNT);
+
+        JsonObject data = new JsonObject();
+        data.addProperty("domain", "i.redd.it");
+        data.add("approved_at_utc", JsonNull.INSTANCE);
+        data.add("banned_by", JsonNull.INSTANCE);
+        data.add("media_embed", new JsonObject());
+        data.addProperty("thumbnail_width", 140);
+        data.addProperty("subreddit", SUBREDDITS[subreddit]);
+        data.add("selftext_html", JsonNull.INSTANCE);
+        data.addProperty("selftext", "");
+        data.add("likes", JsonNull.INSTANCE);
+        data.add("suggested_sort", JsonNull.INSTANCE);
+        data.add("user_reports", new JsonArray());
+        data.add("secure_media", JsonNull.INSTANCE);
+        data.addProperty("is_reddit_media_domain", true);
+        data.add("link_flair_text", JsonNull.INSTANCE);
+        data.addProperty("id", id);
+        data.add("banned_at_utc", JsonNull.INSTANCE);
+        data.add("view_count", JsonNull.INSTANCE);
+        data.addProperty("archived", false);
+        data.addProperty("clicked", false);
+        data.add("report_reasons", JsonNull.INSTANCE);
+        data.addProperty("title", title);
+        data.addProperty("num_crossposts", mRandom.nextInt(6));
+        data.addProperty("saved", false);
+        data.add("mod_reports", new JsonArray());
+        data.addProperty("can_mod_post", false);
+        data.addProperty("is_crosspostable", true);
+        data.addProperty("pinned", false);
+        data.addProperty("score", score);
+        data.add("approved_by", JsonNull.INSTANCE);
+        data.addProperty("over_18", false);
+        data.addProperty("hidden", false);
+        data.add("preview", preview(image));
+        data.addProperty("num_comments", 100 + mRandom.nextInt(4900));
+        data.addProperty("thumbnail", "https://b.thumbs.redditmedia.com/" + randomString(BASE64_URL, 43) + ".jpg");
+        data.addProperty("subreddit_id", mSubredditIds[subreddit]);
+        data.addProperty("hide_score", false);
+        data.addProperty("edited", false);
+        data.add("link_flair_css_class", JsonNull.INSTANCE);
+        data.add("author_flair_css_class", JsonNull.INSTANCE);
+        data.addProperty("contest_mode", false);
+        data.addProperty("gilded", (mRandom.nextInt(4) > 0 ? 0 : 1 + mRandom.nextInt(3)));
+        data.addProperty("downs", 0);
+        data.addProperty("brand_safe", true);
+        data.add("secure_media_embed", new JsonObject());
+        data.add("removal_reason", JsonNull.INSTANCE);
+        data.addProperty("post_hint", "image");
+        data.add("author_flair_text", JsonNull.INSTANCE);
+        data.addProperty("stickied", false);
+        data.addProperty("can_gild", true);
+        data.addProperty("thumbnail_height", 140);
+        data.addProperty("parent_whitelist_status", "all_ads");
+        data.addProperty("name", "t3_" + id);
+        data.addProperty("spoiler", false);
+        data.addProperty("permalink", "/r/" + SUBREDDITS[subreddit] + "/comments/" + id + "/" + slug(title) + "/");
+        data.addProperty("subreddit_type", "public");
+        data.addProperty("locked", false);
+        data.addProperty("created", createdUtc + CREATED_OFFSET);
+        data.addProperty("url", "https://i.redd.it/" + image + ".jpg");
+        data.addProperty("whitelist_status", "all_ads");
+        data.addProperty("quarantine", false);
+        data.addProperty("author", author);
+        data.addProperty("created_utc", createdUtc);
+        data.addProperty("subreddit_name_prefixed", "r/" + SUBREDDITS[subreddit]);
+        data.addProperty("ups", score);
+        data.add("media", JsonNull.INSTANCE);
+        data.add("num_reports", JsonNull.INSTANCE);
+        data.addProperty("is_self", false);
+        data.addProperty("visited", false);
+        data.add("distinguished", JsonNull.INSTANCE);
+        data.addProperty("is_video", false);
+        return data;
+    }
+
+    /**
+     * Generates image preview with scaled resolutions.
+     * @param image Image name.
+     * @return preview object.
+     */
+    private JsonObject preview(String image) {
+        String url = "https://i.redditmedia.com/" + image + ".jpg";
+        int[] size = SOURCE_SIZES[mRandom.nextInt(SOURCE_SIZES.length)];
+
+        JsonArray resolutions = new JsonArray();
+        for (int width : PREVIEW_WIDTHS) {
+            resolutions.add(imageSize(url + "?w=" + width + "&s=" + randomString(HEX, 32), width, width * size[1] / size[0]));
+        }
+        JsonObject item = new JsonObject();
+        item.add("source", imageSize(url, size[0], size[1]));
+        item.add("resolutions", resolutions);
+        item.add("variants", new JsonObject());
+        item.addProperty("id", randomString(BASE36, 43));
+
+        JsonArray images = new JsonArray();
+        images.add(item);
+        JsonObject preview = new JsonObject();
+        preview.add("images", images);
+        preview.addProperty("enabled", true);
+        return preview;
+    }
+
+    /**
+     * Builds image object.
+     * @param url Image URL.
+     * @param width Image width.
+     * @param height Image height.
+     * @return image object.
+     */
+    private static JsonObject imageSize(String url, int width, int height) {
+        JsonObject image = new JsonObject();
+        image.addProperty("url", url);
+        image.addProperty("width", width);
+        image.addProperty("height", height);
+        return image;
+    }
+
+    /**
+     * Generates title of random words.
+     * @return title starting with capital letter.
+     */
+    private String title() {
+        int count = 4 + mRandom.nextInt(13);
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            if (i > 0) {
+                title.append(' ');
+            }
+            title.append(WORDS[mRandom.nextInt(WORDS.length)]);
+        }
+        title.setCharAt(0, Character.toUpperCase(title.charAt(0)));
+        return title.toString();
+    }
+
+    /**
+     * Builds permalink slug from the first title words.
+     * @param title Entry title.
+     * @return slug.
+     */
+    private static String slug(String title) {
+        String[] words = title.toLowerCase(Locale.US).replace("'", "").split(" ");
+        StringBuilder slug = new StringBuilder();
+        for (int i = 0; i < Math.min(6, words.length); ++i) {
+            if (i > 0) {
+                slug.append('_');
+            }
+            slug.append(words[i]);
+        }
+        return slug.toString();
+    }
+
+    /**
+     * Generates random string.
+     * @param alphabet Characters to use.
+     * @param length String length.
+     * @return random string.
+     */
+    private String randomString(String alphabet, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; ++i) {
+            chars[i] = alphabet.charAt(mRandom.nextInt(alphabet.length()));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,82 @@
+package com.task.redditclient.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonReader;
+import com.task.redditclient.model.json.ModelTypeAdapters;
+import com.task.redditclient.model.json.ResponseGetEntries;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Deserialization of "Get entries" response into model classes.
+ * Responses are read from memory through the same reader stack as network responses.
+ */
+@State(Scope.Benchmark)
+public class ListingParseBenchmark {
+    /** Number of entries in the response. */
+    @Param({"10", "25", "100"})
+    public int childCount;
+
+    /** Response body. */
+    private byte[] mBody;
+    /** Gson with reflective binding. */
+    private Gson mReflectiveGson;
+    /** Gson with model adapters, as used by the engine. */
+    private Gson mAdapterGson;
+
+    /**
+     * Prepares response body and parsers.
+     * @throws IOException if generated response can't be read.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        mBody = ListingFixtures.topListing(childCount);
+        mReflectiveGson = new GsonBuilder().create();
+        mAdapterGson = ModelTypeAdapters.register(new GsonBuilder()).create();
+    }
+
+    /**
+     * Parses response with reflective Gson binding.
+     * @return parsed response.
+     */
+    @Benchmark
+    public ResponseGetEntries reflective() {
+        return mReflectiveGson.fromJson(newReader(), ResponseGetEntries.class);
+    }
+
+    /**
+     * Parses response with Gson and model adapters.
+     * @return parsed response.
+     */
+    @Benchmark
+    public ResponseGetEntries adapter() {
+        return mAdapterGson.fromJson(newReader(), ResponseGetEntries.class);
+    }
+
+    /**
+     * Parses response directly with JSON reader.
+     * @return parsed response.
+     * @throws IOException if JSON is malformed.
+     */
+    @Benchmark
+    public ResponseGetEntries streaming() throws IOException {
+        return StreamingListingParser.parse(newReader());
+    }
+
+    /**
+     * Creates reader of response body.
+     * @return JSON reader.
+     */
+    private JsonReader newReader() {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(mBody), ListingFixtures.UTF_8));
+    }
+}
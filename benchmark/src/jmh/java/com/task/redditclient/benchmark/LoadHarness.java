@@ -0,0 +1,425 @@
+package com.task.redditclient.benchmark;
+
+import com.task.redditclient.model.json.ResponseGetEntries;
+import com.task.redditclient.net.DiskCache;
+import com.task.redditclient.net.EngineDriver;
+import com.task.redditclient.net.RequestMetrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * End-to-end load and latency harness.
+ * Application network code is run against local {@link StubRedditServer} with simulated
+ * latency, bandwidth and errors, so results are reproducible and comparable between builds.
+ * Run with "./gradlew :benchmark:loadTest", options are passed with
+ * -PharnessArgs="--latency 100 --bandwidth 262144 --errors 0.05 --gzip false".
+ */
+public final class LoadHarness {
+    /** Number of nanoseconds in millisecond. */
+    private static final long NANOS_PER_MILLI = 1000000;
+    /** Max size of the disk cache used by scenarios. */
+    private static final long CACHE_SIZE = 4 * 1024 * 1024;
+
+    /** Simulated network and payload parameters. */
+    private final StubRedditServer.Config mConfig = new StubRedditServer.Config();
+    //! Load parameters.
+    private int mPageSize = 25;
+    private int mPages = 20;
+    private int mConcurrency = 4;
+    private int mIterations = 10;
+    private int mDownloads = 10;
+    /** Scratch directory for cache and downloaded files. */
+    private File mWorkDir;
+    /** Stub server. */
+    private StubRedditServer mServer;
+
+    /**
+     * Private constructor, harness is started from {@link #main(String[])}.
+     */
+    private LoadHarness() {
+    }
+
+    /**
+     * Runs all scenarios and prints report.
+     * @param args Command line options, see {@link #parseArgs(String[])}.
+     * @throws Exception if harness can't be run.
+     */
+    public static void main(String[] args) throws Exception {
+        LoadHarness harness = new LoadHarness();
+        harness.parseArgs(args);
+        harness.run();
+    }
+
+    /**
+     * Parses command line options.
+     * Supported options: --latency ms, --bandwidth bytes/s, --errors rate, --entries count,
+     * --image-size bytes, --page-size count, --pages count, --concurrency threads,
+     * --iterations count, --downloads count, --gzip true/false.
+     * @param args Command line options.
+     */
+    private void parseArgs(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--latency":
+                    mConfig.latencyMs = Integer.parseInt(value);
+                    break;
+                case "--bandwidth":
+                    mConfig.bandwidth = Long.parseLong(value);
+                    break;
+                case "--errors":
+                    mConfig.errorRate = Double.parseDouble(value);
+                    break;
+                case "--entries":
+                    mConfig.maxEntries = Integer.parseInt(value);
+                    break;
+                case "--image-size":
+                    mConfig.imageSize = Integer.parseInt(value);
+                    break;
+                case "--page-size":
+                    mPageSize = Integer.parseInt(value);
+                    break;
+                case "--pages":
+                    mPages = Integer.parseInt(value);
+                    break;
+                case "--concurrency":
+                    mConcurrency = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    mIterations = Integer.parseInt(value);
+                    break;
+                case "--downloads":
+                    mDownloads = Integer.parseInt(value);
+                    break;
+                case "--gzip":
+                    mConfig.gzip = Boolean.parseBoolean(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    /**
+     * Starts the server, runs scenarios and prints their reports.
+     * @throws Exception if harness can't be run.
+     */
+    private void run() throws Exception {
+        mWorkDir = createWorkDir();
+        mServer = new StubRedditServer(mConfig);
+        mServer.start();
+        resetPeakHeap();
+        try {
+            System.out.printf(Locale.US, "Server %s: latency %d ms, bandwidth %d B/s, error rate %.2f, image %d B%n%n",
+                    mServer.getBaseUrl(), mConfig.latencyMs, mConfig.bandwidth, mConfig.errorRate, mConfig.imageSize);
+            runFirstPage();
+            runCachedFirstPage();
+            runSequentialPaging();
+            runConcurrentPaging();
+            runDownloads();
+            System.out.printf(Locale.US, "Server: %d requests, %d B sent; peak heap %d KB%n",
+                    mServer.getRequestCount(), mServer.getBytesSent(), getPeakHeap() / 1024);
+        } finally {
+            mServer.stop();
+            EngineDriver.setCache(null);
+            deleteRecursively(mWorkDir);
+        }
+    }
+
+    /**
+     * Measures time to the first page without cache: cold start with token request
+     * and warm start with token and connection already available.
+     */
+    private void runFirstPage() {
+        EngineDriver.setCache(null);
+        Stats cold = new Stats("First page, cold");
+        Stats warm = new Stats("First page, warm");
+        for (int i = 0; i < mIterations; ++i) {
+            EngineDriver driver = new EngineDriver(mServer.getBaseUrl());
+            cold.add(driver.getEntries(mPageSize, null));
+            warm.add(driver.getEntries(mPageSize, null));
+        }
+        cold.print();
+        warm.print();
+    }
+
+    /**
+     * Measures the first page served from the disk cache and revalidated with conditional request.
+     */
+    private void runCachedFirstPage() {
+        EngineDriver driver = new EngineDriver(mServer.getBaseUrl());
+        File cacheDir = new File(mWorkDir, "cache");
+        Stats fresh = new Stats("First page, fresh cache");
+        Stats revalidated = new Stats("First page, revalidated");
+        for (int i = 0; i < mIterations; ++i) {
+            deleteRecursively(cacheDir);
+            EngineDriver.setCache(new DiskCache(cacheDir, CACHE_SIZE));
+            driver.getEntries(mPageSize, null);
+            fresh.add(driver.getEntries(mPageSize, null));
+            revalidated.add(driver.revalidateEntries(mPageSize));
+        }
+        EngineDriver.setCache(null);
+        fresh.print();
+        revalidated.print();
+    }
+
+    /**
+     * Measures paging through the listing in a single thread, like user scrolling.
+     */
+    private void runSequentialPaging() {
+        EngineDriver.setCache(null);
+        EngineDriver driver = new EngineDriver(mServer.getBaseUrl());
+        driver.getToken();
+        Stats stats = new Stats("Next page, sequential");
+        long startTime = System.nanoTime();
+        String after = null;
+        for (int i = 0; i < mPages; ++i) {
+            EngineDriver.Result<ResponseGetEntries> result = driver.getEntries(mPageSize, after);
+            stats.add(result);
+            if (null != result.value) {
+                after = result.value.data.after;
+            }
+        }
+        stats.setElapsed(System.nanoTime() - startTime);
+        stats.print();
+    }
+
+    /**
+     * Measures throughput of concurrent page requests, like several clients or prefetching.
+     * @throws Exception if workers can't be executed.
+     */
+    private void runConcurrentPaging() throws Exception {
+        EngineDriver.setCache(null);
+        final EngineDriver driver = new EngineDriver(mServer.getBaseUrl());
+        driver.getToken();
+        final Stats stats = new Stats("Next page, " + mConcurrency + " threads");
+        ExecutorService executor = Executors.newFixedThreadPool(mConcurrency);
+        try {
+            List<Callable<Void>> workers = new ArrayList<>(mConcurrency);
+            for (int i = 0; i < mConcurrency; ++i) {
+                final int worker = i;
+                workers.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int page = worker; page < mPages; page += mConcurrency) {
+                            String after = (0 == page ? null : "t3_" + Integer.toString(page * mPageSize - 1, 36));
+                            stats.add(driver.getEntries(mPageSize, after));
+                        }
+                        return null;
+                    }
+                });
+            }
+            long startTime = System.nanoTime();
+            for (Future<Void> future : executor.invokeAll(workers)) {
+                future.get();
+            }
+            stats.setElapsed(System.nanoTime() - startTime);
+        } finally {
+            executor.shutdownNow();
+        }
+        stats.print();
+    }
+
+    /**
+     * Measures image download throughput and revalidation of downloaded files.
+     * @throws IOException if download directory can't be created.
+     */
+    private void runDownloads() throws IOException {
+        EngineDriver driver = new EngineDriver(mServer.getBaseUrl());
+        File downloadDir = new File(mWorkDir, "downloads");
+        if (!downloadDir.mkdirs()) {
+            throw new IOException("Can't create " + downloadDir);
+        }
+        String saveDir = downloadDir.getAbsolutePath();
+        EngineDriver.setDownloadDir(new File(mWorkDir, "partial"));
+        Stats downloads = new Stats("Download");
+        Stats revalidations = new Stats("Download, not modified");
+        long startTime = System.nanoTime();
+        for (int i = 0; i < mDownloads; ++i) {
+            downloads.add(driver.download(mServer.getImageUrl(i), saveDir));
+        }
+        downloads.setElapsed(System.nanoTime() - startTime);
+        for (int i = 0; i < mDownloads; ++i) {
+            revalidations.add(driver.download(mServer.getImageUrl(i), saveDir));
+        }
+        EngineDriver.setDownloadDir(null);
+        downloads.print();
+        revalidations.print();
+    }
+
+    /**
+     * Creates scratch directory.
+     * @return created directory.
+     * @throws IOException if directory can't be created.
+     */
+    private static File createWorkDir() throws IOException {
+        File dir = File.createTempFile("load-harness", "");
+        if (!dir.delete() || !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Deletes file or directory with its content.
+     * @param file File to delete.
+     */
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (null != children) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * Resets peak usage of heap memory pools.
+     */
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (MemoryType.HEAP == pool.getType()) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Gets peak heap usage since the last reset.
+     * @return sum of peak usage of heap memory pools, in bytes.
+     */
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (MemoryType.HEAP == pool.getType()) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Statistics of a scenario.
+     */
+    private static class Stats {
+        /** Scenario name. */
+        private final String mName;
+        /** Measurements of all requests. */
+        private final List<RequestMetrics> mMetrics = new ArrayList<>();
+        /** Number of failed requests by error. */
+        private final TreeMap<String, Integer> mErrors = new TreeMap<>();
+        /** Scenario wall clock time in nanoseconds, 0 if throughput is not measured. */
+        private long mElapsed;
+
+        /**
+         * Constructor.
+         * @param name Scenario name.
+         */
+        Stats(String name) {
+            mName = name;
+        }
+
+        /**
+         * Adds request result.
+         * @param result Request result.
+         */
+        synchronized void add(EngineDriver.Result<?> result) {
+            mMetrics.add(result.metrics);
+            if (null != result.error) {
+                String error = result.error.getClass().getSimpleName();
+                Integer count = mErrors.get(error);
+                mErrors.put(error, (null == count ? 1 : count + 1));
+            }
+        }
+
+        /**
+         * Sets scenario wall clock time to report throughput.
+         * @param nanos Time in nanoseconds.
+         */
+        synchronized void setElapsed(long nanos) {
+            mElapsed = nanos;
+        }
+
+        /**
+         * Prints scenario report.
+         */
+        synchronized void print() {
+            int count = mMetrics.size();
+            long[] total = new long[count];
+            long[] firstByte = new long[count];
+            long[] transfer = new long[count];
+            long[] parse = new long[count];
+            long bytesIn = 0;
+            long decodedBytesIn = 0;
+            int cached = 0;
+            for (int i = 0; i < count; ++i) {
+                RequestMetrics metrics = mMetrics.get(i);
+                total[i] = metrics.getTotalTime();
+                firstByte[i] = metrics.getFirstByteTime();
+                transfer[i] = metrics.getTransferTime();
+                parse[i] = metrics.getParseTime();
+                bytesIn += metrics.getBytesIn();
+                decodedBytesIn += metrics.getDecodedBytesIn();
+                if (metrics.isFromCache()) {
+                    ++cached;
+                }
+            }
+
+            StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                    "%s: %d requests, %d cached, in %d B (%d B decoded), errors %s%n",
+                    mName, count, cached, bytesIn, decodedBytesIn, mErrors));
+            appendPercentiles(builder, "total", total);
+            appendPercentiles(builder, "first byte", firstByte);
+            appendPercentiles(builder, "transfer", transfer);
+            appendPercentiles(builder, "parse", parse);
+            if (mElapsed > 0) {
+                double seconds = (double)mElapsed / NANOS_PER_MILLI / 1000;
+                builder.append(String.format(Locale.US, "  throughput %.1f requests/s, %.1f KB/s%n",
+                        count / seconds, bytesIn / 1024.0 / seconds));
+            }
+            System.out.println(builder);
+        }
+
+        /**
+         * Appends latency percentiles.
+         * @param builder Report builder.
+         * @param phase Phase name.
+         * @param samples Latencies in milliseconds.
+         */
+        private static void appendPercentiles(StringBuilder builder, String phase, long[] samples) {
+            if (0 == samples.length) {
+                return;
+            }
+            long[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            builder.append(String.format(Locale.US, "  %-10s p50 %5d ms, p95 %5d ms, p99 %5d ms, max %5d ms%n", phase,
+                    percentile(sorted, 50), percentile(sorted, 95), percentile(sorted, 99), sorted[sorted.length - 1]));
+        }
+
+        /**
+         * Gets percentile with nearest rank method.
+         * @param sorted Sorted samples.
+         * @param percentile Percentile from 0 to 100.
+         * @return sample value.
+         */
+        private static long percentile(long[] sorted, int percentile) {
+            int rank = (int)Math.ceil(percentile / 100.0 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.task.redditclient.benchmark;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.task.redditclient.model.json.Entry;
+import com.task.redditclient.model.json.EntryData;
+import com.task.redditclient.model.json.ResponseData;
+import com.task.redditclient.model.json.ResponseGetEntries;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Parser of "Get entries" response built directly on {@link JsonReader} without Gson.
+ * Unused fields are skipped without building their values.
+ */
+final class StreamingListingParser {
+    /**
+     * Private constructor, class has static methods only.
+     */
+    private StreamingListingParser() {
+    }
+
+    /**
+     * Parses "Get entries" response.
+     * @param reader JSON reader positioned at the response.
+     * @return parsed response.
+     * @throws IOException if JSON is malformed.
+     */
+    static ResponseGetEntries parse(JsonReader reader) throws IOException {
+        ResponseGetEntries response = new ResponseGetEntries();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "kind":
+                response.kind = nextString(reader);
+                break;
+            case "data":
+                response.data = parseData(reader);
+                break;
+            default:
+                reader.skipValue();
+                break;
+            }
+        }
+        reader.endObject();
+        return response;
+    }
+
+    /**
+     * Parses listing data.
+     * @param reader JSON reader positioned at the data.
+     * @return parsed data.
+     * @throws IOException if JSON is malformed.
+     */
+    private static ResponseData parseData(JsonReader reader) throws IOException {
+        ResponseData data = new ResponseData();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "modhash":
+                data.modhash = nextString(reader);
+                break;
+            case "after":
+                data.after = nextString(reader);
+                break;
+            case "before":
+                data.before = nextString(reader);
+                break;
+            case "children":
+                data.children = parseChildren(reader);
+                break;
+            default:
+                reader.skipValue();
+                break;
+            }
+        }
+        reader.endObject();
+        return data;
+    }
+
+    /**
+     * Parses listing children.
+     * @param reader JSON reader positioned at the array of children.
+     * @return parsed entries.
+     * @throws IOException if JSON is malformed.
+     */
+    private static Entry[] parseChildren(JsonReader reader) throws IOException {
+        ArrayList<Entry> children = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Entry entry = new Entry();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                case "kind":
+                    entry.kind = nextString(reader);
+                    break;
+                case "data":
+                    entry.data = parseEntryData(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+                }
+            }
+            reader.endObject();
+            children.add(entry);
+        }
+        reader.endArray();
+        return children.toArray(new Entry[children.size()]);
+    }
+
+    /**
+     * Parses entry data.
+     * @param reader JSON reader positioned at the entry data.
+     * @return parsed entry data.
+     * @throws IOException if JSON is malformed.
+     */
+    private static EntryData parseEntryData(JsonReader reader) throws IOException {
+        EntryData data = new EntryData();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "name":
+                data.name = nextString(reader);
+                break;
+            case "title":
+                data.title = nextString(reader);
+                break;
+            case "author":
+                data.author = nextString(reader);
+                break;
+            case "thumbnail":
+                data.thumbnail = nextString(reader);
+                break;
+            case "created_utc":
+                data.created_utc = reader.nextLong();
+                break;
+            case "num_comments":
+                data.num_comments = reader.nextInt();
+                break;
+            case "score":
+                data.score = reader.nextInt();
+                break;
+            default:
+                reader.skipValue();
+                break;
+            }
+        }
+        reader.endObject();
+        return data;
+    }
+
+    /**
+     * Reads string value which may be null.
+     * @param reader JSON reader positioned at the value.
+     * @return string or null.
+     * @throws IOException if JSON is malformed.
+     */
+    private static String nextString(JsonReader reader) throws IOException {
+        if (JsonToken.NULL == reader.peek()) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,480 @@
+package com.task.redditclient.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local HTTP server which imitates Reddit endpoints used by the application:
+ * token endpoint, "top" listing and image files.
+ * Network conditions are simulated by response latency, bandwidth limit and random errors.
+ */
+class StubRedditServer {
+    //! Endpoint paths.
+    static final String PATH_TOKEN  = "/api/v1/access_token";
+    static final String PATH_TOP    = "/top";
+    static final String PATH_IMAGES = "/images/";
+
+    /** Prefix of link full name. */
+    private static final String LINK_PREFIX = "t3_";
+    /** Radix of Reddit IDs. */
+    private static final int ID_RADIX = 36;
+    /** Placeholder of entry name in child templates. */
+    private static final String NAME_PLACEHOLDER = "@@name@@";
+    /** Size of chunks written under bandwidth limit. */
+    private static final int THROTTLE_CHUNK_SIZE = 4096;
+    /** Modification time of images, in milliseconds. */
+    private static final long IMAGE_LAST_MODIFIED = 1506938400000L;
+    /** Format of HTTP dates. */
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    /** Token response body. */
+    private static final String TOKEN_BODY =
+            "{\"access_token\":\"stub-token\",\"token_type\":\"bearer\",\"expires_in\":3600,\"scope\":\"*\"}";
+
+    /**
+     * Simulated network and payload parameters.
+     */
+    static class Config {
+        /** Delay before response headers are sent, in milliseconds. */
+        int latencyMs = 50;
+        /** Max response body rate in bytes per second, 0 for unlimited. */
+        long bandwidth = 0;
+        /** Probability of "503 Service unavailable" response, from 0 to 1. */
+        double errorRate = 0;
+        /** Number of entries in the listing, paging stops after them. */
+        int maxEntries = 1000;
+        /** Size of image files in bytes. */
+        int imageSize = 200 * 1024;
+        /** Flag to compress JSON responses if client accepts gzip. */
+        boolean gzip = true;
+    }
+
+    /** Server parameters. */
+    private final Config mConfig;
+    /** Templates of listing children, split by entry name. */
+    private final String[][] mChildTemplates;
+    /** Random generator of errors. */
+    private final Random mRandom = new Random(1);
+    /** HTTP server. */
+    private HttpServer mServer;
+    /** Executor of server handlers. */
+    private ExecutorService mExecutor;
+    //! Statistics.
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mBytesSent = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param config Server parameters.
+     * @throws IOException if generated listing can't be read.
+     */
+    StubRedditServer(Config config) throws IOException {
+        mConfig = config;
+        JsonArray children = ListingFixtures.topChildren();
+        mChildTemplates = new String[children.size()][];
+        for (int i = 0; i < children.size(); ++i) {
+            JsonObject child = children.get(i).getAsJsonObject();
+            child.getAsJsonObject("data").addProperty("name", NAME_PLACEHOLDER);
+            String json = child.toString();
+            int index = json.indexOf(NAME_PLACEHOLDER);
+            mChildTemplates[i] = new String[]{json.substring(0, index), json.substring(index + NAME_PLACEHOLDER.length())};
+        }
+    }
+
+    /**
+     * Starts server on a free local port.
+     * @throws IOException if server can't be started.
+     */
+    void start() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mExecutor = Executors.newCachedThreadPool();
+        mServer.setExecutor(mExecutor);
+        mServer.createContext(PATH_TOKEN, new StubHandler() {
+            @Override
+            void respond(HttpExchange exchange) throws IOException {
+                drain(exchange.getRequestBody());
+                sendJson(exchange, TOKEN_BODY);
+            }
+        });
+        mServer.createContext(PATH_TOP, new StubHandler() {
+            @Override
+            void respond(HttpExchange exchange) throws IOException {
+                respondListing(exchange);
+            }
+        });
+        mServer.createContext(PATH_IMAGES, new StubHandler() {
+            @Override
+            void respond(HttpExchange exchange) throws IOException {
+                respondImage(exchange);
+            }
+        });
+        mServer.start();
+    }
+
+    /**
+     * Stops server.
+     */
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Gets base URL of the server.
+     * @return URL without trailing slash.
+     */
+    String getBaseUrl() {
+        InetSocketAddress address = mServer.getAddress();
+        return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+    /**
+     * Gets URL of image file.
+     * @param index Image index.
+     * @return image URL.
+     */
+    String getImageUrl(int index) {
+        return getBaseUrl() + PATH_IMAGES + index + ".jpg";
+    }
+
+    /**
+     * Gets number of handled requests.
+     * @return request count.
+     */
+    long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * Gets number of sent response body bytes.
+     * @return byte count.
+     */
+    long getBytesSent() {
+        return mBytesSent.get();
+    }
+
+    /**
+     * Sends page of the listing. Entries are numbered sequentially, "after" parameter is the last received entry.
+     * @param exchange HTTP exchange.
+     * @throws IOException if response can't be sent.
+     */
+    private void respondListing(HttpExchange exchange) throws IOException {
+        HashMap<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        int limit = parseInt(params.get("limit"), 25);
+        String after = params.get("after");
+        int start = (null == after || !after.startsWith(LINK_PREFIX) ? 0
+                : Integer.parseInt(after.substring(LINK_PREFIX.length()), ID_RADIX) + 1);
+        int end = Math.min(mConfig.maxEntries, start + Math.max(0, limit));
+
+        String eTag = "\"top-" + start + "-" + end + "\"";
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", eTag);
+        headers.set("Cache-Control", "private, max-age=0");
+        if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            send(exchange, 304, null, null);
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder("{\"kind\":\"Listing\",\"data\":{\"modhash\":\"\",\"dist\":")
+                .append(Math.max(0, end - start)).append(",\"children\":[");
+        String lastName = null;
+        for (int i = start; i < end; ++i) {
+            String[] template = mChildTemplates[i % mChildTemplates.length];
+            lastName = LINK_PREFIX + Integer.toString(i, ID_RADIX);
+            if (i > start) {
+                builder.append(',');
+            }
+            builder.append(template[0]).append(lastName).append(template[1]);
+        }
+        builder.append("],\"after\":");
+        if (null != lastName && end < mConfig.maxEntries) {
+            builder.append('"').append(lastName).append('"');
+        } else {
+            builder.append("null");
+        }
+        builder.append(",\"before\":null}}");
+        sendJson(exchange, builder.toString());
+    }
+
+    /**
+     * Sends image file. Conditional and range requests are supported like by real image hosts.
+     * @param exchange HTTP exchange.
+     * @throws IOException if response can't be sent.
+     */
+    private void respondImage(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String eTag = "\"" + path.hashCode() + "-" + mConfig.imageSize + "\"";
+        Headers requestHeaders = exchange.getRequestHeaders();
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", eTag);
+        headers.set("Last-Modified", formatHttpDate(IMAGE_LAST_MODIFIED));
+        if (eTag.equals(requestHeaders.getFirst("If-None-Match"))
+                || isNotModifiedSince(requestHeaders.getFirst("If-Modified-Since"), IMAGE_LAST_MODIFIED)) {
+            send(exchange, 304, null, null);
+            return;
+        }
+
+        byte[] image = new byte[mConfig.imageSize];
+        new Random(path.hashCode()).nextBytes(image);
+        String range = requestHeaders.getFirst("Range");
+        String ifRange = requestHeaders.getFirst("If-Range");
+        if (null != range && range.startsWith("bytes=") && range.endsWith("-") && (null == ifRange || eTag.equals(ifRange))) {
+            int from = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            if (from >= image.length) {
+                send(exchange, 416, null, null);
+                return;
+            }
+            byte[] part = new byte[image.length - from];
+            System.arraycopy(image, from, part, 0, part.length);
+            headers.set("Content-Range", "bytes " + from + "-" + (image.length - 1) + "/" + image.length);
+            send(exchange, 206, "image/jpeg", part);
+            return;
+        }
+        send(exchange, 200, "image/jpeg", image);
+    }
+
+    /**
+     * Formats HTTP date.
+     * @param time Time in milliseconds.
+     * @return formatted date.
+     */
+    private static String formatHttpDate(long time) {
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(time));
+    }
+
+    /**
+     * Checks If-Modified-Since condition.
+     * @param ifModifiedSince Value of If-Modified-Since header field, may be null.
+     * @param lastModified Modification time of the resource, in milliseconds.
+     * @return true if resource is not modified since the given date.
+     */
+    private static boolean isNotModifiedSince(String ifModifiedSince, long lastModified) {
+        if (null == ifModifiedSince) {
+            return false;
+        }
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(ifModifiedSince).getTime() >= lastModified;
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Sends JSON response, compressed if client accepts gzip.
+     * @param exchange HTTP exchange.
+     * @param json Response body.
+     * @throws IOException if response can't be sent.
+     */
+    private void sendJson(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(ListingFixtures.UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (mConfig.gzip && null != acceptEncoding && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length / 4);
+            GZIPOutputStream gzipStream = new GZIPOutputStream(buffer);
+            gzipStream.write(body);
+            gzipStream.close();
+            body = buffer.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        send(exchange, 200, "application/json; charset=UTF-8", body);
+    }
+
+    /**
+     * Sends response with simulated bandwidth.
+     * @param exchange HTTP exchange.
+     * @param statusCode HTTP status code.
+     * @param contentType Content type or null.
+     * @param body Response body or null.
+     * @throws IOException if response can't be sent.
+     */
+    private void send(HttpExchange exchange, int statusCode, String contentType, byte[] body) throws IOException {
+        if (null != contentType) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        if (null == body || 0 == body.length) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.sendResponseHeaders(statusCode, body.length);
+        OutputStream outStream = new ThrottledOutputStream(exchange.getResponseBody(), mConfig.bandwidth);
+        try {
+            outStream.write(body);
+        } finally {
+            outStream.close();
+        }
+        mBytesSent.addAndGet(body.length);
+    }
+
+    /**
+     * Parses URL query.
+     * @param query Raw query or null.
+     * @return map of decoded parameters.
+     * @throws IOException if query can't be decoded.
+     */
+    private static HashMap<String, String> parseQuery(String query) throws IOException {
+        HashMap<String, String> params = new HashMap<>();
+        if (null != query) {
+            for (String pair : query.split("&")) {
+                int index = pair.indexOf('=');
+                if (index > 0) {
+                    params.put(pair.substring(0, index), URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+                }
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Parses integer parameter.
+     * @param value Parameter value or null.
+     * @param defaultValue Value to use if parameter is absent or invalid.
+     * @return parsed value.
+     */
+    private static int parseInt(String value, int defaultValue) {
+        try {
+            return (null == value ? defaultValue : Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads the rest of the stream.
+     * @param inStream Stream to drain.
+     * @throws IOException if error occurs.
+     */
+    private static void drain(InputStream inStream) throws IOException {
+        byte[] buffer = new byte[THROTTLE_CHUNK_SIZE];
+        while (-1 != inStream.read(buffer)) {
+            // Skip request body.
+        }
+    }
+
+    /**
+     * Handler which simulates latency and random errors before the actual response.
+     */
+    private abstract class StubHandler implements HttpHandler {
+        /**
+         * @see HttpHandler#handle(HttpExchange)
+         */
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            mRequestCount.incrementAndGet();
+            try {
+                if (mConfig.latencyMs > 0) {
+                    Thread.sleep(mConfig.latencyMs);
+                }
+                boolean fail;
+                synchronized (mRandom) {
+                    fail = mRandom.nextDouble() < mConfig.errorRate;
+                }
+                if (fail) {
+                    drain(exchange.getRequestBody());
+                    send(exchange, 503, "text/plain", "Service unavailable".getBytes(ListingFixtures.UTF_8));
+                } else {
+                    respond(exchange);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        }
+
+        /**
+         * Sends actual response.
+         * @param exchange HTTP exchange.
+         * @throws IOException if response can't be sent.
+         */
+        abstract void respond(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Stream which limits write rate.
+     */
+    private static class ThrottledOutputStream extends FilterOutputStream {
+        /** Max rate in bytes per second, 0 for unlimited. */
+        private final long mBandwidth;
+        /** Time when writing started, in nanoseconds. */
+        private final long mStartTime = System.nanoTime();
+        /** Number of written bytes. */
+        private long mWritten;
+
+        /**
+         * Constructor.
+         * @param outStream Destination stream.
+         * @param bandwidth Max rate in bytes per second, 0 for unlimited.
+         */
+        ThrottledOutputStream(OutputStream outStream, long bandwidth) {
+            super(outStream);
+            mBandwidth = bandwidth;
+        }
+
+        /**
+         * @see FilterOutputStream#write(byte[], int, int)
+         */
+        @Override
+        public void write(byte[] buffer, int offset, int count) throws IOException {
+            while (count > 0) {
+                int chunk = Math.min(count, THROTTLE_CHUNK_SIZE);
+                out.write(buffer, offset, chunk);
+                out.flush();
+                mWritten += chunk;
+                offset += chunk;
+                count -= chunk;
+                throttle();
+            }
+        }
+
+        /**
+         * Sleeps until written bytes fit the bandwidth.
+         * @throws IOException if thread is interrupted.
+         */
+        private void throttle() throws IOException {
+            if (mBandwidth <= 0) {
+                return;
+            }
+            long expectedTime = TimeUnit.SECONDS.toNanos(mWritten) / mBandwidth;
+            long delay = expectedTime - (System.nanoTime() - mStartTime);
+            if (delay > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted", e);
+                }
+            }
+        }
+    }
+}
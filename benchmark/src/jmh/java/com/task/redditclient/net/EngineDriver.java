@@ -0,0 +1,164 @@
+package com.task.redditclient.net;
+
+import com.task.redditclient.model.json.ResponseGetEntries;
+
+import java.io.File;
+
+/**
+ * Executes engine requests on the desktop JVM.
+ * Engine itself depends on Android framework, so the driver executes requests with
+ * {@link ApiClient} shared with the engine: token request, "get entries" with disk cache and image download.
+ * Every call is measured by {@link RequestMetrics} like engine tasks are.
+ */
+public class EngineDriver {
+    /** Device ID sent with "Get token" request. */
+    private static final String DEVICE_ID = "load-harness";
+    /** User agent identifier. */
+    private static final String USER_AGENT = "jvm:com.task.redditclient.benchmark:v1.0";
+
+    /**
+     * Result of a measured request.
+     * @param <T> Type of request result.
+     */
+    public static class Result<T> {
+        /** Request result, null if request is failed. */
+        public final T value;
+        /** Request error, null if request is succeeded. */
+        public final Exception error;
+        /** Request measurements. */
+        public final RequestMetrics metrics;
+
+        /**
+         * Constructor.
+         * @param value Request result.
+         * @param error Request error.
+         * @param metrics Request measurements.
+         */
+        Result(T value, Exception error, RequestMetrics metrics) {
+            this.value = value;
+            this.error = error;
+            this.metrics = metrics;
+        }
+    }
+
+    /** Client of the server, it keeps access token. */
+    private final ApiClient mApi;
+
+    /**
+     * Constructor.
+     * @param baseUrl Base URL of the server without trailing slash.
+     */
+    public EngineDriver(String baseUrl) {
+        mApi = new ApiClient(baseUrl, baseUrl, USER_AGENT, null, DEVICE_ID, new PageSizePolicy(), null);
+    }
+
+    /**
+     * Sets disk cache used by network requests.
+     * @param cache Disk cache or null to disable caching.
+     */
+    public static void setCache(DiskCache cache) {
+        NetManager.setCache(cache);
+    }
+
+    /**
+     * Sets directory of partial downloads.
+     * @param dir Directory to keep partial downloads in or null to use the temporary directory.
+     */
+    public static void setDownloadDir(File dir) {
+        NetManager.setDownloadDir(dir);
+    }
+
+    /**
+     * Drops received access token, so the next request gets a new one.
+     */
+    public void resetToken() {
+        mApi.invalidateToken(mApi.getAccessToken());
+    }
+
+    /**
+     * Gets a new access token.
+     * @return token in the result value.
+     */
+    public Result<String> getToken() {
+        RequestMetrics metrics = RequestMetrics.begin();
+        try {
+            resetToken();
+            mApi.ensureToken();
+            return succeeded(mApi.getAccessToken(), metrics);
+        } catch (Exception e) {
+            return failed(e, metrics);
+        }
+    }
+
+    /**
+     * Gets page of entries, requesting token first if needed.
+     * The first page is served from the disk cache while it is fresh, like in the engine.
+     * @param limit Number of entries to request.
+     * @param after Entry ID to get the next page, null for the first page.
+     * @return response in the result value.
+     */
+    public Result<ResponseGetEntries> getEntries(int limit, String after) {
+        RequestMetrics metrics = RequestMetrics.begin();
+        try {
+            return succeeded(mApi.getEntries(ApiClient.DEFAULT_SOURCE,
+                    ApiClient.sourceParams(ApiClient.DEFAULT_SOURCE, limit, after), (null == after)), metrics);
+        } catch (Exception e) {
+            return failed(e, metrics);
+        }
+    }
+
+    /**
+     * Gets the first page from the network, sending validators of the cached response.
+     * This is how the engine refreshes stale first page.
+     * @param limit Number of entries to request.
+     * @return response in the result value.
+     */
+    public Result<ResponseGetEntries> revalidateEntries(int limit) {
+        RequestMetrics metrics = RequestMetrics.begin();
+        try {
+            return succeeded(mApi.requestEntries(mApi.getListingUrl(ApiClient.DEFAULT_SOURCE),
+                    ApiClient.sourceParams(ApiClient.DEFAULT_SOURCE, limit, null), true), metrics);
+        } catch (Exception e) {
+            return failed(e, metrics);
+        }
+    }
+
+    /**
+     * Downloads file.
+     * @param url Remote file URL.
+     * @param saveDir Destination folder.
+     * @return local file path in the result value.
+     */
+    public Result<String> download(String url, String saveDir) {
+        RequestMetrics metrics = RequestMetrics.begin();
+        try {
+            return succeeded(NetManager.download(url, saveDir), metrics);
+        } catch (Exception e) {
+            return failed(e, metrics);
+        }
+    }
+
+    /**
+     * Finishes measuring of succeeded request.
+     * @param value Request result.
+     * @param metrics Request measurements.
+     * @param <T> Type of request result.
+     * @return request result.
+     */
+    private static <T> Result<T> succeeded(T value, RequestMetrics metrics) {
+        metrics.end(false);
+        return new Result<>(value, null, metrics);
+    }
+
+    /**
+     * Finishes measuring of failed request.
+     * @param e Request error.
+     * @param metrics Request measurements.
+     * @param <T> Type of request result.
+     * @return request result.
+     */
+    private static <T> Result<T> failed(Exception e, RequestMetrics metrics) {
+        metrics.end(true);
+        return new Result<>(null, e, metrics);
+    }
+}
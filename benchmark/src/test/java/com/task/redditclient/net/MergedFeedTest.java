@@ -0,0 +1,219 @@
+package com.task.redditclient.net;
+
+import com.task.redditclient.model.json.Entry;
+import com.task.redditclient.model.json.EntryData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of merging listings, combining their cursors and skipping duplicates.
+ */
+public class MergedFeedTest {
+    //! Merged listings.
+    private static final FeedSource FIRST = new FeedSource("/r/first/top", "day");
+    private static final FeedSource SECOND = new FeedSource("/r/second/top", "day");
+
+    /**
+     * Entries are committed only when no entry of the next pages can precede them.
+     */
+    @Test
+    public void commitsEntriesPrecedingLastFetchedOfEachListing() {
+        MergedFeed.State state = newFeed().begin(true);
+        state.add(0, entries(entry("a1", 100), entry("a2", 50)), "a2");
+        state.add(1, entries(entry("b1", 80), entry("b2", 70)), "b2");
+        state.commitReady();
+
+        // The next page of the first listing may contain entries scored between 70 and 50.
+        assertEquals(Arrays.asList("a1", "b1", "b2", "a2"), names(state.getTail()));
+        assertEquals(0, state.getCommittedCount());
+
+        MergedFeed feed = newFeed();
+        state = feed.begin(true);
+        state.add(0, entries(entry("a1", 100), entry("a2", 50)), "a2");
+        state.add(1, entries(entry("b1", 80), entry("b2", 70)), "b2");
+        state.commitReady();
+        feed.commit(state);
+        state = feed.begin(false);
+        assertEquals(3, state.getCommittedCount());
+        assertEquals(Arrays.asList("a2"), names(state.getTail()));
+    }
+
+    /**
+     * Entries present in several listings are displayed once.
+     */
+    @Test
+    public void skipsDuplicates() {
+        MergedFeed feed = newFeed();
+        MergedFeed.State state = feed.begin(true);
+        state.add(0, entries(entry("a1", 100), entry("c1", 90)), "c1");
+        state.add(1, entries(entry("c1", 90), entry("b1", 80)), "b1");
+        state.commitReady();
+        feed.commit(state);
+
+        state = feed.begin(false);
+        state.add(0, entries(entry("b1", 80), entry("a2", 10)), null);
+        state.add(1, entries(entry("b2", 5)), null);
+        state.commitReady();
+        assertEquals(Arrays.asList("b1", "a2", "b2"), names(state.getTail()));
+        assertEquals(2, state.getCommittedCount());
+    }
+
+    /**
+     * Feed cursor combines cursors of listings which are not exhausted.
+     */
+    @Test
+    public void combinesCursors() {
+        MergedFeed.State state = newFeed().begin(true);
+        assertEquals(",", state.getCursor());
+
+        state.add(0, entries(entry("a1", 100)), "a1");
+        state.add(1, entries(entry("b1", 90)), "b1");
+        assertEquals("a1,b1", state.getCursor());
+
+        state.add(0, entries(), null);
+        assertEquals(",b1", state.getCursor());
+        assertEquals(Arrays.asList(1), state.getActiveSources());
+
+        state.add(1, entries(entry("b2", 80)), null);
+        assertNull(state.getCursor());
+        assertTrue(state.getActiveSources().isEmpty());
+    }
+
+    /**
+     * Listing which fails repeatedly is skipped, so entries of other listings are committed.
+     */
+    @Test
+    public void skipsFailingListing() {
+        MergedFeed feed = newFeed();
+        MergedFeed.State state = feed.begin(true);
+        state.add(0, entries(entry("a1", 100), entry("a2", 50)), "a2");
+        assertFalse(state.fail(1));
+        state.commitReady();
+        assertEquals(2, state.getTail().size());
+        feed.commit(state);
+
+        for (int i = 1; i < MergedFeed.MAX_SOURCE_FAILURES; ++i) {
+            state = feed.begin(false);
+            assertEquals(i + 1 == MergedFeed.MAX_SOURCE_FAILURES, state.fail(1));
+            state.commitReady();
+            feed.commit(state);
+        }
+
+        state = feed.begin(false);
+        assertEquals(Arrays.asList(0), state.getActiveSources());
+        assertEquals(2, state.getCommittedCount());
+        assertEquals("a2,", state.getCursor());
+    }
+
+    /**
+     * Successful page resets the number of failures in a row.
+     */
+    @Test
+    public void resetsFailuresOnSuccess() {
+        MergedFeed.State state = newFeed().begin(true);
+        for (int i = 1; i < MergedFeed.MAX_SOURCE_FAILURES; ++i) {
+            assertFalse(state.fail(1));
+        }
+        state.add(1, entries(entry("b1", 100)), "b1");
+        assertFalse(state.fail(1));
+        assertEquals(Arrays.asList(0, 1), state.getActiveSources());
+    }
+
+    /**
+     * Page which is not committed does not change the feed.
+     */
+    @Test
+    public void cancelledPageDoesNotChangeFeed() {
+        MergedFeed feed = newFeed();
+        MergedFeed.State state = feed.begin(true);
+        state.add(0, entries(entry("a1", 100)), null);
+        state.add(1, entries(entry("b1", 90)), null);
+        state.commitReady();
+        feed.commit(state);
+
+        MergedFeed.State cancelled = feed.begin(false);
+        cancelled.add(0, entries(entry("a2", 80)), null);
+
+        state = feed.begin(false);
+        assertEquals(2, state.getCommittedCount());
+        assertTrue(state.getTail().isEmpty());
+    }
+
+    /**
+     * Names of entries committed long ago are not kept, recent ones are still skipped.
+     */
+    @Test
+    public void keepsNamesOfRecentlyCommittedEntries() {
+        MergedFeed feed = newFeed();
+        int count = MergedFeed.MAX_COMMITTED_NAMES + 10;
+        Entry[] first = new Entry[count];
+        for (int i = 0; i < count; ++i) {
+            first[i] = entry("a" + i, 10000 - i);
+        }
+        MergedFeed.State state = feed.begin(true);
+        state.add(0, first, null);
+        state.add(1, entries(), null);
+        state.commitReady();
+        feed.commit(state);
+
+        MergedFeed.State next = feed.begin(false);
+        assertEquals(count, next.getCommittedCount());
+        // Exhausted listings are not fetched anymore, the state is checked directly.
+        next.add(1, entries(entry("a0", 1), entry("a" + (count - 1), 1)), null);
+        next.commitReady();
+        assertEquals(Arrays.asList("a0"), names(next.getTail()));
+    }
+
+    /**
+     * Creates feed merged by score.
+     * @return merged feed.
+     */
+    private static MergedFeed newFeed() {
+        return new MergedFeed(Arrays.asList(FIRST, SECOND), MergeOrder.SCORE);
+    }
+
+    /**
+     * Creates entry.
+     * @param name Entry full name.
+     * @param score Entry score.
+     * @return entry.
+     */
+    private static Entry entry(String name, int score) {
+        Entry entry = new Entry();
+        entry.data = new EntryData();
+        entry.data.name = name;
+        entry.data.score = score;
+        return entry;
+    }
+
+    /**
+     * Creates page of entries.
+     * @param entries Entries of page.
+     * @return array of entries.
+     */
+    private static Entry[] entries(Entry... entries) {
+        return entries;
+    }
+
+    /**
+     * Gets names of entries.
+     * @param entries Entry list.
+     * @return list of names.
+     */
+    private static List<String> names(List<Entry> entries) {
+        ArrayList<String> names = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            names.add(entry.data.name);
+        }
+        return names;
+    }
+}